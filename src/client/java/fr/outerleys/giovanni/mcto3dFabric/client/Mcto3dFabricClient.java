@@ -28,7 +28,6 @@
     import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
     import net.fabricmc.loader.api.FabricLoader;
     import net.minecraft.block.Block;
-    import net.minecraft.block.BlockState;
     import net.minecraft.client.MinecraftClient;
     import net.minecraft.particle.ParticleTypes;
     import net.minecraft.text.Text;
@@ -36,8 +35,7 @@
     import net.minecraft.util.math.Vec3d;
 
     import java.io.File;
-    import java.util.Map;
-    import java.util.concurrent.CompletableFuture;
+    import java.util.Locale;
 
     public class Mcto3dFabricClient implements ClientModInitializer {
 
@@ -82,75 +80,18 @@
 
                 // --- COMMAND: EXPORT ---
                 dispatcher.register(ClientCommandManager.literal("export3d")
+                        // Job queue: /export3d jobs, /export3d cancel [id]
+                        .then(ClientCommandManager.literal("jobs")
+                                .executes(this::listExportJobs))
+                        .then(ClientCommandManager.literal("cancel")
+                                .executes(context -> cancelExport(context, -1))
+                                .then(ClientCommandManager.argument("id", IntegerArgumentType.integer(1))
+                                        .executes(context -> cancelExport(context, IntegerArgumentType.getInteger(context, "id")))))
                         .then(ClientCommandManager.argument("filename", StringArgumentType.string())
-                                .executes(context -> {
-                                    var player = context.getSource().getPlayer();
-                                    String projectName = StringArgumentType.getString(context, "filename");
-                                    var client = MinecraftClient.getInstance();
-
-                                    if (Mcto3dFabric.MANAGER.hasSelection(player.getUuid())) {
-
-                                        // Initial Feedback
-                                        context.getSource().sendFeedback(Text.literal("§eStarting background export... check the screen center!"));
-
-                                        Cuboid selection = Mcto3dFabric.MANAGER.getSelection(player.getUuid());
-                                        float scale = Mcto3dFabric.MANAGER.getScale(player.getUuid());
-                                        var world = player.getEntityWorld();
-
-                                        // ENABLE OVERLAY
-                                        ExportOverlay.isVisible = true;
-                                        ExportOverlay.progress = 0f;
-                                        ExportOverlay.startTime = System.currentTimeMillis();
-
-                                        CompletableFuture.runAsync(() -> {
-                                            try {
-                                                long startTime = System.currentTimeMillis();
-
-                                                File exportsDir = new File(FabricLoader.getInstance().getGameDir().toFile(), "exports");
-                                                File projectDir = new File(exportsDir, projectName);
-                                                projectDir.mkdirs();
-
-                                                // 1. Export RAW (STL)
-                                                ExportOverlay.progress = 0f;
-                                                StlExporter stlExporter = new StlExporter();
-                                                stlExporter.export(selection, world, new File(projectDir, projectName + "_raw.stl"),
-                                                        scale, (p) -> ExportOverlay.progress = p);
-
-                                                // 2. Export COLOR (OBJ)
-                                                ExportOverlay.progress = 0f;
-                                                ObjExporter objExporter = new ObjExporter();
-                                                objExporter.export(selection, world, new File(projectDir, projectName + "_color"), ObjExporter.MODE_COLOR,
-                                                        scale, (p) -> ExportOverlay.progress = p);
-
-                                                // 3. Export TEXTURE (OBJ)
-                                                ExportOverlay.progress = 0f;
-                                                objExporter.export(selection, world, new File(projectDir, projectName + "_texture"), ObjExporter.MODE_TEXTURES,
-                                                        scale, (p) -> ExportOverlay.progress = p);
-
-                                                long duration = System.currentTimeMillis() - startTime;
-
-                                                // Success: Return to main thread
-                                                client.execute(() -> {
-                                                    ExportOverlay.isVisible = false;
-                                                    player.sendMessage(Text.literal("§aExport completed successfully in " + duration + "ms!"), false);
-                                                    player.sendMessage(Text.literal("§7Folder: exports/" + projectName), false);
-                                                });
-
-                                            } catch (Exception e) {
-                                                e.printStackTrace();
-                                                // Error: Return to main thread
-                                                client.execute(() -> {
-                                                    ExportOverlay.isVisible = false;
-                                                    player.sendMessage(Text.literal("§cAn error occurred during export! Check console."), false);
-                                                });
-                                            }
-                                        });
-
-                                    } else {
-                                        context.getSource().sendError(Text.literal("§cNo selection! Use the Golden Hoe."));
-                                    }
-                                    return 1;
-                                })));
+                                .executes(context -> runExport(context, ""))
+                                // Optional formats and settings, e.g. "stl glb engine=greedy solidify=true"
+                                .then(ClientCommandManager.argument("options", StringArgumentType.greedyString())
+                                        .executes(context -> runExport(context, StringArgumentType.getString(context, "options"))))));
 
                 // --- POS 1 ---
                 dispatcher.register(ClientCommandManager.literal("pos1")
@@ -206,128 +147,19 @@
                         // Subcommand 1: Local File Import
                         .then(ClientCommandManager.argument("filename", StringArgumentType.string())
                                 .then(ClientCommandManager.argument("scale", FloatArgumentType.floatArg())
-                                        .executes(context -> {
-                                            String filename = StringArgumentType.getString(context, "filename");
-                                            float scale = FloatArgumentType.getFloat(context, "scale");
-                                            var player = context.getSource().getPlayer();
-
-                                            // LOGGING: Track local import usage
-                                            CommandLogger.log(player.getName().getString(), "/import3d " + filename + " " + scale);
-
-                                            // Append .obj extension if the user forgot it
-                                            if (!filename.endsWith(".obj")) filename += ".obj";
-                                            File file = new File(FabricLoader.getInstance().getGameDir().toFile(), "imports/" + filename);
-
-                                            if (file.exists()) {
-                                                context.getSource().sendFeedback(Text.literal("§eLoading and Voxelizing... (Scale: " + scale + ")"));
-
-                                                // Start Voxelization process
-                                                var voxels = Voxelizer.loadAndVoxelize(file, scale);
-
-                                                if (voxels.isEmpty()) {
-                                                    context.getSource().sendError(Text.literal("§cNo blocks generated. Try increasing the Scale!"));
-                                                } else {
-                                                    ImportManager.currentVoxels = voxels;
-                                                    ImportManager.isActive = true;
-                                                    // Reset placement settings for a fresh import
-                                                    ImportManager.rotationSteps = 0;
-                                                    ImportManager.distance = 5.0;
-
-                                                    context.getSource().sendFeedback(Text.literal("§aModel loaded! (" + voxels.size() + " blocks)"));
-                                                    context.getSource().sendFeedback(Text.literal("§7Use /place3d or /print3d to confirm, Arrow Keys to rotate/move."));
-                                                }
-                                            } else {
-                                                context.getSource().sendError(Text.literal("§cFile not found in /run/imports/"));
-                                            }
-                                            return 1;
-                                        })))
+                                        .executes(context -> importLocalFile(context, false))
+                                        // "fill": solid model instead of a hollow shell
+                                        .then(ClientCommandManager.literal("fill")
+                                                .executes(context -> importLocalFile(context, true)))))
 
-                        // Subcommand 2: AI Generation
+                        // Subcommand 2: AI Generation ("fill" goes before the prompt, which takes the rest of the line)
                         .then(ClientCommandManager.literal("ai")
                                 .then(ClientCommandManager.argument("scale", FloatArgumentType.floatArg())
+                                        .then(ClientCommandManager.literal("fill")
+                                                .then(ClientCommandManager.argument("prompt", StringArgumentType.greedyString())
+                                                        .executes(context -> importAiModel(context, true))))
                                         .then(ClientCommandManager.argument("prompt", StringArgumentType.greedyString())
-                                                .executes(context -> {
-                                                    float scale = FloatArgumentType.getFloat(context, "scale");
-                                                    String prompt = StringArgumentType.getString(context, "prompt");
-                                                    var player = context.getSource().getPlayer();
-
-                                                    // LOGGING: Track AI prompts
-                                                    CommandLogger.log(player.getName().getString(), "/import3d ai " + scale + " " + prompt);
-
-                                                    player.sendMessage(Text.literal("§dGenerating AI Model: " + prompt + "..."), false);
-
-                                                    // ASYNC GENERATION with Robust Error Handling
-                                                    TrellisClient.generate3DModel(prompt)
-                                                            .thenAccept(base64 -> {
-                                                                try {
-                                                                    // PRE-CHECK: Did the API return an empty string due to a safety filter?
-                                                                    if (base64 == null || base64.trim().isEmpty() || base64.length() < 50) {
-                                                                        throw new IllegalArgumentException("Received empty or invalid data from API. The AI likely blocked your prompt for safety reasons.");
-                                                                    }
-
-                                                                    // 1. Prepare directories
-                                                                    File importsDir = new File(FabricLoader.getInstance().getGameDir().toFile(), "imports");
-                                                                    if (!importsDir.exists()) importsDir.mkdirs();
-
-                                                                    String safeName = prompt.replaceAll("[^a-zA-Z0-9]", "_");
-                                                                    if (safeName.length() > 15) safeName = safeName.substring(0, 15);
-                                                                    File outputFile = new File(importsDir, "ai_" + safeName + ".obj");
-
-                                                                    // 2. Convert GLB (Base64) to OBJ
-                                                                    GlbConverter.convertGlbToObj(base64, outputFile);
-
-                                                                    // 3. Return to Main Thread for Voxelization
-                                                                    MinecraftClient.getInstance().execute(() -> {
-                                                                        player.sendMessage(Text.literal("§aModel received! Voxelizing..."), false);
-
-                                                                        var voxels = Voxelizer.loadAndVoxelize(outputFile, scale);
-
-                                                                        if (!voxels.isEmpty()) {
-                                                                            ImportManager.currentVoxels = voxels;
-                                                                            ImportManager.isActive = true;
-                                                                            ImportManager.rotationSteps = 0;
-                                                                            ImportManager.distance = 5.0;
-                                                                            player.sendMessage(Text.literal("§bObject ready! Use Arrows to adjust, /print3d to build."), false);
-                                                                        } else {
-                                                                            player.sendMessage(Text.literal("§cObject empty. Scale might be too small?"), false);
-                                                                        }
-                                                                    });
-
-                                                                } catch (Exception e) {
-                                                                    e.printStackTrace();
-
-                                                                    // Custom error message generation to prevent "null" outputs
-                                                                    String errorMsg = e.getMessage();
-                                                                    if (e instanceof java.nio.BufferUnderflowException || errorMsg == null) {
-                                                                        errorMsg = "API returned an empty 3D file (Safety filter triggered or generation failed).";
-                                                                    }
-
-                                                                    final String finalErrorMsg = errorMsg;
-
-                                                                    // Report conversion errors safely to the user
-                                                                    MinecraftClient.getInstance().execute(() ->
-                                                                            player.sendMessage(Text.literal("§cConversion Error: " + finalErrorMsg), false)
-                                                                    );
-                                                                }
-                                                            })
-                                                            .exceptionally(ex -> {
-                                                                // CATCH TRELLIS/NETWORK ERRORS (401, 403, Timeouts)
-                                                                Throwable cause = ex.getCause(); // Unwrap the CompletionException
-                                                                String msg = cause != null ? cause.getMessage() : ex.getMessage();
-
-                                                                System.err.println("AI Generation Failed: " + msg);
-                                                                CommandLogger.log(player.getName().getString(), msg);
-                                                                        MinecraftClient.getInstance().execute(() -> {
-                                                                    player.sendMessage(Text.literal("§cAI Failed: " + msg), false);
-                                                                    if (msg.contains("401") || msg.contains("403")) {
-                                                                        player.sendMessage(Text.literal("§7Check your API Key with /mcto3d apikey"), false);
-                                                                    }
-                                                                });
-                                                                return null;
-                                                            });
-
-                                                    return 1;
-                                                })))));
+                                                .executes(context -> importAiModel(context, false))))));
                 // --- COMMAND: PLACE BLOCKS (CONFIRM) ---
                 dispatcher.register(ClientCommandManager.literal("place3d")
                         .executes(context -> {
@@ -345,20 +177,19 @@
                             int count = 0;
                             int rotation = ImportManager.rotationSteps;
 
-                            for (Map.Entry<BlockPos, BlockState> entry : ImportManager.currentVoxels.entrySet()) {
-                                BlockPos rel = entry.getKey();
-
-                                int newX = rel.getX();
-                                int newZ = rel.getZ();
+                            VoxelVolume.Cursor cursor = ImportManager.currentVoxels.cursor();
+                            while (cursor.next()) {
+                                int newX = cursor.x();
+                                int newZ = cursor.z();
                                 for (int i = 0; i < rotation; i++) {
                                     int tempX = newX;
                                     newX = -newZ;
                                     newZ = tempX;
                                 }
 
-                                BlockPos target = origin.add(newX, rel.getY(), newZ);
+                                BlockPos target = origin.add(newX, cursor.y(), newZ);
 
-                                int rawId = Block.getRawIdFromState(entry.getValue());
+                                int rawId = Block.getRawIdFromState(cursor.state());
                                 var payload = new PlaceBlockPayload(target, rawId);
 
                                 if (ClientPlayNetworking.canSend(PlaceBlockPayload.ID)) {
@@ -383,6 +214,8 @@
                 // --- COMMAND: CANCEL ---
                 dispatcher.register(ClientCommandManager.literal("clear3d")
                         .executes(context -> {
+                            // Stops the voxelization too, if the model is still being imported
+                            ImportManager.cancelImport();
                             ImportManager.clear();
                             context.getSource().sendFeedback(Text.literal("§cImport cancelled."));
                             return 1;
@@ -426,6 +259,242 @@
             });
         }
 
+        private int runExport(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context, String rawOptions) {
+            var player = context.getSource().getPlayer();
+            String projectName = StringArgumentType.getString(context, "filename");
+            var client = MinecraftClient.getInstance();
+
+            ExportOptions options;
+            try {
+                options = ExportOptions.parse(rawOptions);
+            } catch (IllegalArgumentException e) {
+                context.getSource().sendError(Text.literal("§c" + e.getMessage()));
+                return 0;
+            }
+
+            if (Mcto3dFabric.MANAGER.hasSelection(player.getUuid())) {
+
+                Cuboid selection = Mcto3dFabric.MANAGER.getSelection(player.getUuid());
+                float scale = Mcto3dFabric.MANAGER.getScale(player.getUuid());
+                var world = player.getEntityWorld();
+
+                // Queued behind the running export (if any), the overlay follows the running one
+                boolean busy = !ExportJobManager.getJobs().isEmpty();
+                ExportJob queued = ExportJobManager.submit(projectName, options.getPriority(), job -> {
+                    try {
+                        long startTime = System.currentTimeMillis();
+
+                        File exportsDir = new File(FabricLoader.getInstance().getGameDir().toFile(), "exports");
+                        File projectDir = new File(exportsDir, projectName);
+                        projectDir.mkdirs();
+
+                        // 0. Capture the selection once (reads happen on the game thread, slab by slab)
+                        job.step("Capture");
+                        VoxelSnapshot snapshot = VoxelSnapshot.capture(selection, world, client,
+                                options.needsTints(), job.progress());
+
+                        // 0b. Level of detail: coarse voxels, exported larger so the model keeps its size
+                        float exportScale = scale;
+                        if (options.getLod() > 1) {
+                            job.step("LOD " + options.getLod());
+                            snapshot = snapshot.downsample(options.getLod(), job.progress());
+                            exportScale = scale * options.getLod();
+                        }
+
+                        // 1. Selected formats (all by default), written side by side from the snapshot
+                        job.step(String.join(" + ", options.getFormats()).toUpperCase(Locale.ROOT));
+                        ExportFormats.export(snapshot, projectDir, projectName, options, exportScale, job.progress());
+
+                        long duration = System.currentTimeMillis() - startTime;
+
+                        // Success: Return to main thread
+                        client.execute(() -> {
+                            player.sendMessage(Text.literal("§aExport completed successfully in " + duration + "ms!"), false);
+                            player.sendMessage(Text.literal("§7Folder: exports/" + projectName), false);
+                        });
+
+                    } catch (Exception e) {
+                        if (job.isCancelRequested()) {
+                            client.execute(() -> player.sendMessage(Text.literal("§6Export #" + job.getId() + " (" + projectName + ") cancelled."), false));
+                            throw e;
+                        }
+                        e.printStackTrace();
+                        // Error: Return to main thread
+                        client.execute(() -> {
+                            player.sendMessage(Text.literal("§cAn error occurred during export! Check console."), false);
+                        });
+                        throw e;
+                    }
+                });
+
+                if (queued == null) {
+                    context.getSource().sendError(Text.literal("§cToo many exports queued (" + ExportJobManager.MAX_QUEUED + " max), wait or use /export3d cancel."));
+                    return 0;
+                }
+                // Initial Feedback
+                String position = busy ? " (queued)" : "";
+                context.getSource().sendFeedback(Text.literal("§eExport #" + queued.getId() + " started in background (" + options.getEngine() + ")" + position + "... check the screen center!"));
+
+            } else {
+                context.getSource().sendError(Text.literal("§cNo selection! Use the Golden Hoe."));
+            }
+            return 1;
+        }
+
+        // --- EXPORT JOBS ---
+
+        private int listExportJobs(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context) {
+            var jobs = ExportJobManager.getJobs();
+            if (jobs.isEmpty()) {
+                context.getSource().sendFeedback(Text.literal("§7No export running."));
+                return 1;
+            }
+            for (ExportJob job : jobs) {
+                String state = job.getStatus() == ExportJob.Status.RUNNING
+                        ? "§a" + job.getStep() + " " + (int) (job.getProgress() * 100) + "%"
+                        : job.getPriority() == ExportJob.Priority.NORMAL ? "§7queued" : "§7queued, " + job.getPriority().name().toLowerCase(Locale.ROOT) + " priority";
+                if (job.isCancelRequested()) state = "§6cancelling";
+                context.getSource().sendFeedback(Text.literal("§e#" + job.getId() + " §f" + job.getName() + " " + state));
+            }
+            return 1;
+        }
+
+        // id -1 = the running export
+        private int cancelExport(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context, int id) {
+            if (id == -1) {
+                ExportJob running = ExportJobManager.getRunning();
+                if (running == null) {
+                    context.getSource().sendError(Text.literal("§cNo export running."));
+                    return 0;
+                }
+                id = running.getId();
+            }
+            if (!ExportJobManager.cancel(id)) {
+                context.getSource().sendError(Text.literal("§cNo export #" + id + ", see /export3d jobs."));
+                return 0;
+            }
+            context.getSource().sendFeedback(Text.literal("§6Cancelling export #" + id + "..."));
+            return 1;
+        }
+
+        private int importLocalFile(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context, boolean fill) {
+            String filename = StringArgumentType.getString(context, "filename");
+            float scale = FloatArgumentType.getFloat(context, "scale");
+            var player = context.getSource().getPlayer();
+
+            // LOGGING: Track local import usage
+            CommandLogger.log(player.getName().getString(), "/import3d " + filename + " " + scale + (fill ? " fill" : ""));
+
+            // Append .obj extension if the user forgot it
+            if (!filename.endsWith(".obj")) filename += ".obj";
+            File file = new File(FabricLoader.getInstance().getGameDir().toFile(), "imports/" + filename);
+
+            if (file.exists()) {
+                context.getSource().sendFeedback(Text.literal("§eLoading and Voxelizing in background... (Scale: " + scale + (fill ? ", filled" : "") + ", /clear3d to cancel)"));
+
+                // Start Voxelization process (published on the game thread when done)
+                ImportManager.startImport(file, scale, fill,
+                        count -> {
+                            if (count == 0) {
+                                player.sendMessage(Text.literal("§cNo blocks generated. Try increasing the Scale!"), false);
+                            } else {
+                                player.sendMessage(Text.literal("§aModel loaded! (" + count + " blocks)"), false);
+                                player.sendMessage(Text.literal("§7Use /place3d or /print3d to confirm, Arrow Keys to rotate/move."), false);
+                            }
+                        },
+                        e -> {
+                            e.printStackTrace();
+                            player.sendMessage(Text.literal("§cVoxelization failed! Check console."), false);
+                        });
+            } else {
+                context.getSource().sendError(Text.literal("§cFile not found in /run/imports/"));
+            }
+            return 1;
+        }
+
+        private int importAiModel(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context, boolean fill) {
+            float scale = FloatArgumentType.getFloat(context, "scale");
+            String prompt = StringArgumentType.getString(context, "prompt");
+            var player = context.getSource().getPlayer();
+
+            // LOGGING: Track AI prompts
+            CommandLogger.log(player.getName().getString(), "/import3d ai " + scale + (fill ? " fill " : " ") + prompt);
+
+            player.sendMessage(Text.literal("§dGenerating AI Model: " + prompt + "..."), false);
+
+            // ASYNC GENERATION with Robust Error Handling
+            TrellisClient.generate3DModel(prompt)
+                    .thenAccept(base64 -> {
+                        try {
+                            // PRE-CHECK: Did the API return an empty string due to a safety filter?
+                            if (base64 == null || base64.trim().isEmpty() || base64.length() < 50) {
+                                throw new IllegalArgumentException("Received empty or invalid data from API. The AI likely blocked your prompt for safety reasons.");
+                            }
+
+                            // 1. Prepare directories
+                            File importsDir = new File(FabricLoader.getInstance().getGameDir().toFile(), "imports");
+                            if (!importsDir.exists()) importsDir.mkdirs();
+
+                            String safeName = prompt.replaceAll("[^a-zA-Z0-9]", "_");
+                            if (safeName.length() > 15) safeName = safeName.substring(0, 15);
+                            File outputFile = new File(importsDir, "ai_" + safeName + ".obj");
+
+                            // 2. Convert GLB (Base64) to OBJ
+                            GlbConverter.convertGlbToObj(base64, outputFile);
+
+                            // 3. Voxelization in background (the result is published on the Main Thread)
+                            MinecraftClient.getInstance().execute(() ->
+                                    player.sendMessage(Text.literal("§aModel received! Voxelizing" + (fill ? " (filled)" : "") + "..."), false));
+
+                            ImportManager.startImport(outputFile, scale, fill,
+                                    count -> {
+                                        if (count > 0) {
+                                            player.sendMessage(Text.literal("§bObject ready! Use Arrows to adjust, /print3d to build."), false);
+                                        } else {
+                                            player.sendMessage(Text.literal("§cObject empty. Scale might be too small?"), false);
+                                        }
+                                    },
+                                    e -> {
+                                        e.printStackTrace();
+                                        player.sendMessage(Text.literal("§cVoxelization failed! Check console."), false);
+                                    });
+
+                        } catch (Exception e) {
+                            e.printStackTrace();
+
+                            // Custom error message generation to prevent "null" outputs
+                            String errorMsg = e.getMessage();
+                            if (e instanceof java.nio.BufferUnderflowException || errorMsg == null) {
+                                errorMsg = "API returned an empty 3D file (Safety filter triggered or generation failed).";
+                            }
+
+                            final String finalErrorMsg = errorMsg;
+
+                            // Report conversion errors safely to the user
+                            MinecraftClient.getInstance().execute(() ->
+                                    player.sendMessage(Text.literal("§cConversion Error: " + finalErrorMsg), false)
+                            );
+                        }
+                    })
+                    .exceptionally(ex -> {
+                        // CATCH TRELLIS/NETWORK ERRORS (401, 403, Timeouts)
+                        Throwable cause = ex.getCause(); // Unwrap the CompletionException
+                        String msg = cause != null ? cause.getMessage() : ex.getMessage();
+
+                        System.err.println("AI Generation Failed: " + msg);
+                        CommandLogger.log(player.getName().getString(), msg);
+                                MinecraftClient.getInstance().execute(() -> {
+                            player.sendMessage(Text.literal("§cAI Failed: " + msg), false);
+                            if (msg.contains("401") || msg.contains("403")) {
+                                player.sendMessage(Text.literal("§7Check your API Key with /mcto3d apikey"), false);
+                            }
+                        });
+                        return null;
+                    });
+
+            return 1;
+        }
+
         private int startPrinting(com.mojang.brigadier.context.CommandContext<net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource> context, int speedMs) {
             if (!ImportManager.isActive || ImportManager.currentVoxels == null) {
                 context.getSource().sendError(Text.literal("§cUse /import3d first."));
@@ -11,18 +11,16 @@
 package fr.outerleys.giovanni.mcto3dFabric.client.event;
 
 import fr.outerleys.giovanni.mcto3dFabric.client.utils.ImportManager;
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.VoxelVolume;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.event.player.AttackBlockCallback;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
-import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 
-import java.util.Map;
-
 public class InputHandler {
 
     public static void register() {
@@ -75,10 +73,10 @@ public class InputHandler {
         int count = 0;
         int rotation = ImportManager.rotationSteps;
 
-        for (Map.Entry<BlockPos, BlockState> entry : ImportManager.currentVoxels.entrySet()) {
-            BlockPos rel = entry.getKey();
-            int x = rel.getX();
-            int z = rel.getZ();
+        VoxelVolume.Cursor cursor = ImportManager.currentVoxels.cursor();
+        while (cursor.next()) {
+            int x = cursor.x();
+            int z = cursor.z();
             int newX = x;
             int newZ = z;
 
@@ -89,10 +87,10 @@ public class InputHandler {
                 newZ = tempX;
             }
 
-            BlockPos finalPos = origin.add(newX, rel.getY(), newZ);
+            BlockPos finalPos = origin.add(newX, cursor.y(), newZ);
 
             if (client.world != null) {
-                client.world.setBlockState(finalPos, entry.getValue());
+                client.world.setBlockState(finalPos, cursor.state());
                 count++;
             }
         }
@@ -11,12 +11,12 @@
 package fr.outerleys.giovanni.mcto3dFabric.client.event;
 
 import fr.outerleys.giovanni.mcto3dFabric.client.utils.ImportManager;
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.VoxelVolume;
 import fr.outerleys.giovanni.mcto3dFabric.utils.PlaceBlockPayload; // IMPORT IMPORTANT
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking; // IMPORT IMPORTANT
 import net.minecraft.block.Block;
-import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.KeyBinding;
 import net.minecraft.client.util.InputUtil;
@@ -26,8 +26,6 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 import org.lwjgl.glfw.GLFW;
 
-import java.util.Map;
-
 public class KeyInputHandler {
 
     // Define a unique category object.
@@ -126,10 +124,10 @@ public class KeyInputHandler {
         int count = 0;
         int rotation = ImportManager.rotationSteps;
 
-        for (Map.Entry<BlockPos, BlockState> entry : ImportManager.currentVoxels.entrySet()) {
-            BlockPos rel = entry.getKey();
-            int newX = rel.getX();
-            int newZ = rel.getZ();
+        VoxelVolume.Cursor cursor = ImportManager.currentVoxels.cursor();
+        while (cursor.next()) {
+            int newX = cursor.x();
+            int newZ = cursor.z();
 
             // Mathematical rotation of relative coordinates
             for (int i = 0; i < rotation; i++) {
@@ -138,16 +136,16 @@ public class KeyInputHandler {
                 newZ = tempX;
             }
 
-            BlockPos finalPos = origin.add(newX, rel.getY(), newZ);
+            BlockPos finalPos = origin.add(newX, cursor.y(), newZ);
 
             if (client.world != null) {
                 // --- OLD WAY (Ghost Blocks) ---
-                // client.world.setBlockState(finalPos, entry.getValue(), 3);
+                // client.world.setBlockState(finalPos, cursor.state(), 3);
 
                 // --- NEW WAY (Networking) ---
                 // We send a packet to the server for each block
                 // (Note: For very large objects, we should batch this, but for <5000 blocks it's okay)
-                int rawId = Block.getRawIdFromState(entry.getValue());
+                int rawId = Block.getRawIdFromState(cursor.state());
                 var payload = new PlaceBlockPayload(finalPos, rawId);
 
                 if (ClientPlayNetworking.canSend(PlaceBlockPayload.ID)) {
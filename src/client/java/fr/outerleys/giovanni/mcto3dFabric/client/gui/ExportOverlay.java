@@ -10,22 +10,25 @@
 
 package fr.outerleys.giovanni.mcto3dFabric.client.gui;
 
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.ExportJob;
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.ExportJobManager;
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.ImportManager;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.render.RenderTickCounter;
 import net.minecraft.text.Text;
 
+// Progress bar of the running export job (see ExportJobManager), or else of the import being voxelized,
+// hidden when neither runs
 public class ExportOverlay implements HudRenderCallback {
 
-    public static boolean isVisible = false;
-    public static float progress = 0.0f;
-    // We need the start time to calculate the estimated remaining time (ETA)
-    public static long startTime = 0;
-
     @Override
     public void onHudRender(DrawContext context, RenderTickCounter tickCounter) {
-        if (!isVisible) return;
+        ExportJob job = ExportJobManager.getRunning();
+        if (job == null) job = ImportManager.getImportJob();
+        if (job == null) return;
+        float progress = job.getProgress();
 
         MinecraftClient client = MinecraftClient.getInstance();
         if (client == null) return;
@@ -52,7 +55,7 @@ public class ExportOverlay implements HudRenderCallback {
         context.fill(barX, barY, barX + progressWidth, barY + barHeight, 0xFF00FF00);
 
         // 3. Text Calculation (% and ETA)
-        String infoText = getInfoText();
+        String infoText = getInfoText(progress, job.getStepStartTime());
 
         // 4. Text Display (Right of the bar)
         // x = end of bar + 5 pixels margin
@@ -61,9 +64,16 @@ public class ExportOverlay implements HudRenderCallback {
 
         // Use Text.literal for modern Minecraft versions
         context.drawTextWithShadow(client.textRenderer, Text.literal(infoText), textX, textY, 0xFFFFFF);
+
+        // 5. Job label (Left of the bar), e.g. "#3 castle: OBJ +1"
+        String label = (job.getId() > 0 ? "#" + job.getId() + " " : "") + job.getName() + ": " + job.getStep();
+        int queued = ExportJobManager.getQueuedCount();
+        if (queued > 0) label += " +" + queued;
+        int labelX = barX - 8 - client.textRenderer.getWidth(label);
+        context.drawTextWithShadow(client.textRenderer, Text.literal(label), labelX, textY, 0xFFFFFF);
     }
 
-    private String getInfoText() {
+    private String getInfoText(float progress, long startTime) {
         // Percentage
         int percent = (int)(progress * 100);
 
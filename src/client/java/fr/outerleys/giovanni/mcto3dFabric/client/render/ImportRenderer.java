@@ -11,21 +11,18 @@
 package fr.outerleys.giovanni.mcto3dFabric.client.render;
 
 import fr.outerleys.giovanni.mcto3dFabric.client.utils.ImportManager;
+import fr.outerleys.giovanni.mcto3dFabric.client.utils.VoxelVolume;
 import net.fabricmc.fabric.api.client.rendering.v1.world.WorldRenderContext;
 import net.fabricmc.fabric.api.client.rendering.v1.world.WorldRenderEvents;
-import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.util.math.MatrixStack;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.RotationAxis;
 import net.minecraft.util.math.Vec3d;
 import org.joml.Matrix4f;
 
-import java.util.Map;
-
 public class ImportRenderer {
 
     public static void register() {
@@ -63,16 +60,15 @@ public class ImportRenderer {
         // without needing complex custom render layers.
         VertexConsumer buffer = consumers.getBuffer(RenderLayer.getDebugFilledBox());
 
-        for (Map.Entry<BlockPos, BlockState> entry : ImportManager.currentVoxels.entrySet()) {
-            BlockPos pos = entry.getKey();
-
+        VoxelVolume voxels = ImportManager.currentVoxels;
+        voxels.forEach((x, y, z, state) -> {
             // Optimization: Only render the outer shell of the object
-            if (ImportManager.isEdge(pos)) {
+            if (voxels.isEdge(x, y, z)) {
                 matrices.push();
-                matrices.translate(pos.getX(), pos.getY(), pos.getZ());
+                matrices.translate(x, y, z);
 
                 // Get the block's default map color since we don't have world context for the ghost block
-                int colorInt = entry.getValue().getBlock().getDefaultMapColor().color;
+                int colorInt = state.getBlock().getDefaultMapColor().color;
 
                 float r = ((colorInt >> 16) & 0xFF) / 255f;
                 float g = ((colorInt >> 8) & 0xFF) / 255f;
@@ -84,7 +80,7 @@ public class ImportRenderer {
 
                 matrices.pop();
             }
-        }
+        });
 
         matrices.pop();
     }
@@ -0,0 +1,163 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output of the binary writers (STL, GLB): callers put little endian data straight into a large window,
+ * and the file only sees one operation per window instead of one per triangle or per flush.
+ * - streamed: the window is a direct buffer written with one channel write when full
+ * - gzip: the window is handed to a GzipOutput (compressed in the background) when full; the first
+ *   prefixLength bytes stay patchable, they go to the stored prefix member of the .gz
+ */
+public class BinaryOutput implements AutoCloseable {
+
+    private static final int STREAMED_WINDOW = 8 << 20; // 8 MB
+    public static final int MAX_RESERVE = 1 << 16; // Largest reserve() request
+
+    private final FileChannel channel; // null in gzip mode
+    private final GzipOutput gzip;
+    private final ByteBuffer prefix; // gzip mode: the patchable first bytes
+    private ByteBuffer window;
+    private long windowStart = 0;
+
+    public static BinaryOutput streamed(File file) throws IOException {
+        return new BinaryOutput(file);
+    }
+
+    // Compressed output to file (e.g. "model.stl.gz"), the first prefixLength bytes can still be patched
+    public static BinaryOutput gzip(File file, int prefixLength) throws IOException {
+        return new BinaryOutput(new GzipOutput(file, prefixLength), prefixLength);
+    }
+
+    private BinaryOutput(GzipOutput gzip, int prefixLength) {
+        this.channel = null;
+        this.gzip = gzip;
+        this.prefix = ByteBuffer.allocate(prefixLength).order(ByteOrder.LITTLE_ENDIAN);
+        window = prefixLength > 0 ? prefix : ByteBuffer.allocate(STREAMED_WINDOW).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private BinaryOutput(File file) throws IOException {
+        this.gzip = null;
+        this.prefix = null;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        window = ByteBuffer.allocateDirect(STREAMED_WINDOW).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The current window, with at least {@code bytes} (up to MAX_RESERVE) free: put the data straight into it.
+     * The buffer may change between calls, don't keep it.
+     */
+    public ByteBuffer reserve(int bytes) throws IOException {
+        if (bytes > MAX_RESERVE) throw new IllegalArgumentException("Reserve too large: " + bytes);
+        if (window.remaining() < bytes) nextWindow();
+        return window;
+    }
+
+    public void put(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!window.hasRemaining()) nextWindow();
+            if (channel != null && window.position() == 0 && length >= window.capacity()) {
+                // Large block on an empty window: written as is, without the copy
+                ByteBuffer wrapped = ByteBuffer.wrap(data, offset, length);
+                while (wrapped.hasRemaining()) channel.write(wrapped);
+                windowStart += length;
+                return;
+            }
+            int n = Math.min(length, window.remaining());
+            window.put(data, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void put(byte[] data) throws IOException {
+        put(data, 0, data.length);
+    }
+
+    // Bytes written so far
+    public long position() {
+        return windowStart + window.position();
+    }
+
+    private void nextWindow() throws IOException {
+        long position = position();
+        if (gzip != null) {
+            if (window == prefix) {
+                if (prefix.hasRemaining()) throw new IOException("Write across the end of the prefix");
+                window = ByteBuffer.allocate(STREAMED_WINDOW).order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                gzip.write(window.array(), 0, window.position());
+                window.clear();
+            }
+        } else {
+            window.flip();
+            while (window.hasRemaining()) channel.write(window);
+            window.clear();
+        }
+        windowStart = position;
+    }
+
+    // Overwrites 4 bytes already written, e.g. a count in a header (little endian)
+    public void patchInt(long position, int value) throws IOException {
+        if (gzip != null) {
+            if (position + 4 > prefix.capacity()) throw new IOException("Only the prefix of a compressed output can be patched");
+            prefix.putInt((int) position, value);
+            return;
+        }
+        if (position >= windowStart && position + 4 <= position()) {
+            window.putInt((int) (position - windowStart), value);
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).flip();
+        while (bytes.hasRemaining()) channel.write(bytes, position + bytes.position());
+    }
+
+    // Failed export: a compressed file is deleted (see GzipOutput.abort()), a plain one is left as written
+    public void abort() {
+        if (gzip != null) {
+            gzip.abort();
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (gzip != null) {
+            try {
+                if (window != prefix) gzip.write(window.array(), 0, window.position());
+                gzip.setPrefix(prefix.array());
+            } catch (IOException | RuntimeException e) {
+                gzip.abort();
+                throw e;
+            }
+            gzip.close();
+            return;
+        }
+        try {
+            window.flip();
+            while (window.hasRemaining()) channel.write(window);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.*;
+import net.minecraft.util.shape.VoxelShape;
+
+import java.util.Arrays;
+
+// Faces of the legacy engine (one box per block shape) for one section, with the faces
+// between two opaque full cubes removed. Shared by the GLB and 3MF exporters.
+// Culling comes from an OccupancyGrid built once per export (see grid()).
+public class BlockFaces {
+
+    // Face order: Down, Up, South, North, West, East
+    public static final float[][] NORMALS = {{0, -1, 0}, {0, 1, 0}, {0, 0, 1}, {0, 0, -1}, {-1, 0, 0}, {1, 0, 0}};
+
+    // Growable face buffer: 4 corners (block units, counter-clockwise seen from outside),
+    // a normal (index in NORMALS) and a palette index per face
+    public static class FaceList {
+        public double[] corners = new double[12 * 256];
+        public byte[] normals = new byte[256];
+        public int[] blocks = new int[256];
+        public int count = 0;
+
+        void add(int block, int normal, double x1, double y1, double z1, double x2, double y2, double z2,
+                 double x3, double y3, double z3, double x4, double y4, double z4) {
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, count * 2);
+                normals = Arrays.copyOf(normals, count * 2);
+                corners = Arrays.copyOf(corners, count * 24);
+            }
+            int o = count * 12;
+            corners[o] = x1; corners[o + 1] = y1; corners[o + 2] = z1;
+            corners[o + 3] = x2; corners[o + 4] = y2; corners[o + 5] = z2;
+            corners[o + 6] = x3; corners[o + 7] = y3; corners[o + 8] = z3;
+            corners[o + 9] = x4; corners[o + 10] = y4; corners[o + 11] = z4;
+            normals[count] = (byte) normal;
+            blocks[count++] = block;
+        }
+    }
+
+    // Grid to pass to mesh(), built once per export
+    public static OccupancyGrid grid(VoxelSnapshot snapshot) {
+        return new OccupancyGrid(snapshot, state -> isPlantOrFlat(state.getBlock()), null);
+    }
+
+    // printable = true gives plants the thick crossed boxes of the STL export instead of the thin textured planes
+    public static FaceList mesh(VoxelSnapshot snapshot, OccupancyGrid grid, SectionedExport.Section section, boolean printable) {
+        FaceList faces = new FaceList();
+        long[] opaqueNeighbors = new long[6];
+
+        for (int x = section.minX(); x <= section.maxX(); x++) {
+            for (int y = section.minY(); y <= section.maxY(); y++) {
+                for (int word = section.minZ() >>> 6; word <= section.maxZ() >>> 6; word++) {
+                    // Only the solid blocks of the section, 64 at a time
+                    long blocks = grid.solidWord(x, y, word) & sectionMask(section, word);
+                    if (blocks == 0) continue;
+                    long cubes = blocks & grid.opaqueWord(x, y, word);
+                    if (cubes != 0) {
+                        for (int f = 0; f < 6; f++) opaqueNeighbors[f] = grid.opaqueNeighbors(f, x, y, word);
+                    }
+
+                    while (blocks != 0) {
+                        int bit = Long.numberOfTrailingZeros(blocks);
+                        blocks &= blocks - 1;
+                        int z = (word << 6) + bit;
+
+                        int block = snapshot.get(x, y, z);
+                        BlockState state = snapshot.getState(block);
+
+                        double relX = x;
+                        double relY = y;
+                        double relZ = z;
+
+                        if (isPlantOrFlat(state.getBlock())) {
+                            if (printable) {
+                                // Same as the STL export
+                                double thick = 0.2;
+                                double off = (1.0 - thick) / 2.0;
+                                double h = 0.8;
+                                addBox(faces, block, relX + off, relY, relZ + 0.1, relX + off + thick, relY + h, relZ + 0.9, 0);
+                                addBox(faces, block, relX + 0.1, relY, relZ + off, relX + 0.9, relY + h, relZ + off + thick, 0);
+                            } else {
+                                // Thin crossed planes, same as the OBJ export
+                                double thick = 0.01;
+                                double off = (1.0 - thick) / 2.0;
+                                addBox(faces, block, relX + off, relY, relZ, relX + off + thick, relY + 1.0, relZ + 1.0, 0);
+                                addBox(faces, block, relX, relY, relZ + off, relX + 1.0, relY + 1.0, relZ + off + thick, 0);
+                            }
+                        } else if ((cubes & (1L << bit)) != 0) {
+                            // Culling: skip the faces against another opaque full cube of the selection
+                            int hidden = 0;
+                            for (int f = 0; f < 6; f++) {
+                                if ((opaqueNeighbors[f] & (1L << bit)) != 0) hidden |= 1 << f;
+                            }
+                            if (hidden != 0b111111) addBox(faces, block, relX, relY, relZ, relX + 1, relY + 1, relZ + 1, hidden);
+                        } else {
+                            VoxelShape shape = snapshot.getShape(block);
+                            if (!shape.isEmpty()) {
+                                shape.forEachBox((minX, minY, minZ, maxX, maxY, maxZ) -> addBox(faces, block,
+                                        relX + minX, relY + minY, relZ + minZ,
+                                        relX + maxX, relY + maxY, relZ + maxZ, 0));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return faces;
+    }
+
+    // Bits of the word that fall inside the section's Z range
+    static long sectionMask(SectionedExport.Section section, int word) {
+        int from = Math.max(section.minZ() - (word << 6), 0);
+        int to = Math.min(section.maxZ() - (word << 6), 63);
+        long upTo = to == 63 ? -1L : (1L << (to + 1)) - 1;
+        return upTo & (-1L << from);
+    }
+
+    // Same corners as the OBJ box, hiddenMask bits follow NORMALS
+    private static void addBox(FaceList faces, int block, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int hiddenMask) {
+        if ((hiddenMask & 1) == 0) faces.add(block, 0, minX, minY, minZ, maxX, minY, minZ, maxX, minY, maxZ, minX, minY, maxZ); // Bottom
+        if ((hiddenMask & 2) == 0) faces.add(block, 1, minX, maxY, maxZ, maxX, maxY, maxZ, maxX, maxY, minZ, minX, maxY, minZ); // Top
+        if ((hiddenMask & 4) == 0) faces.add(block, 2, minX, minY, maxZ, maxX, minY, maxZ, maxX, maxY, maxZ, minX, maxY, maxZ); // South
+        if ((hiddenMask & 8) == 0) faces.add(block, 3, maxX, minY, minZ, minX, minY, minZ, minX, maxY, minZ, maxX, maxY, minZ); // North
+        if ((hiddenMask & 16) == 0) faces.add(block, 4, minX, minY, minZ, minX, minY, maxZ, minX, maxY, maxZ, minX, maxY, minZ); // West
+        if ((hiddenMask & 32) == 0) faces.add(block, 5, maxX, minY, maxZ, maxX, minY, minZ, maxX, maxY, minZ, maxX, maxY, maxZ); // East
+    }
+
+    private static boolean isPlantOrFlat(Block block) {
+        return block instanceof PlantBlock || block instanceof TorchBlock || block instanceof AbstractPlantPartBlock;
+    }
+}
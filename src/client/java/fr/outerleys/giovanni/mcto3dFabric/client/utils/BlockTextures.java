@@ -0,0 +1,129 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.resource.Resource;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+// Block textures as used by the exporters: the particle sprite of the block model,
+// read back from the resource manager and multiplied by the biome tint (-1 = untinted).
+// See SpriteCache for the cached, parallel version used during exports.
+public class BlockTextures {
+
+    public static Sprite getSprite(BlockState state) {
+        try {
+            // FIX: Use 'var' to avoid import issues with BakedModel
+            // The location of BakedModel changes between versions/mappings (render.model vs resources.model)
+            var model = MinecraftClient.getInstance().getBlockRenderManager().getModel(state);
+            return model.particleSprite();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // File name (without extension) of a sprite + tint, e.g. "block_oak_leaves_tinted_48b518"
+    public static String textureName(Sprite sprite, int tintColor) {
+        String name = sprite.getContents().getId().getPath().replace("/", "_");
+        if (tintColor != -1) name += "_tinted_" + Integer.toHexString(tintColor);
+        return name;
+    }
+
+    // Decoded sprite (ARGB, row by row)
+    public record Pixels(int width, int height, int[] argb) {}
+
+    // Untinted pixels of the sprite's texture file, or null if it can't be read
+    public static Pixels decode(Sprite sprite) {
+        Identifier spriteId = sprite.getContents().getId();
+        // Correct identifier creation for texture path
+        Identifier resourceLocation = Identifier.of(
+                spriteId.getNamespace(),
+                "textures/" + spriteId.getPath() + ".png"
+        );
+
+        try {
+            Optional<Resource> resource = MinecraftClient.getInstance().getResourceManager().getResource(resourceLocation);
+            if (resource.isEmpty()) return null;
+
+            try (InputStream inputStream = resource.get().getInputStream();
+                 NativeImage image = NativeImage.read(inputStream)) {
+                int w = image.getWidth();
+                int h = image.getHeight();
+                int[] argb = new int[w * h];
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) {
+                        argb[y * w + x] = image.getColorArgb(x, y);
+                    }
+                }
+                return new Pixels(w, h, argb);
+            }
+        } catch (Exception e) {
+            System.err.println("Error reading texture: " + spriteId);
+            return null;
+        }
+    }
+
+    // Multiplies every visible pixel by the tint (-1 = untinted, returns the same pixels)
+    public static Pixels tint(Pixels pixels, int tintColor) {
+        if (tintColor == -1) return pixels;
+
+        int tintR = (tintColor >> 16) & 0xFF;
+        int tintG = (tintColor >> 8) & 0xFF;
+        int tintB = (tintColor) & 0xFF;
+
+        int[] in = pixels.argb();
+        int[] out = new int[in.length];
+        for (int i = 0; i < in.length; i++) {
+            int pixelColor = in[i];
+            int alpha = pixelColor >>> 24;
+            if (alpha == 0) continue; // Fully transparent stays 0
+
+            int newR = (((pixelColor >> 16) & 0xFF) * tintR) / 255;
+            int newG = (((pixelColor >> 8) & 0xFF) * tintG) / 255;
+            int newB = ((pixelColor & 0xFF) * tintB) / 255;
+            out[i] = (alpha << 24) | (newR << 16) | (newG << 8) | newB;
+        }
+        return new Pixels(pixels.width(), pixels.height(), out);
+    }
+
+    public static void writePng(Pixels pixels, Path file) throws IOException {
+        try (NativeImage image = new NativeImage(pixels.width(), pixels.height(), true)) {
+            int w = pixels.width();
+            int[] argb = pixels.argb();
+            for (int y = 0; y < pixels.height(); y++) {
+                for (int x = 0; x < w; x++) {
+                    image.setColorArgb(x, y, argb[y * w + x]);
+                }
+            }
+            image.writeTo(file);
+        }
+    }
+
+    // PNG bytes (to embed the texture in a GLB)
+    public static byte[] pngBytes(Pixels pixels) throws IOException {
+        Path temp = Files.createTempFile("mcto3d_texture", ".png");
+        try {
+            writePng(pixels, temp);
+            return Files.readAllBytes(temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
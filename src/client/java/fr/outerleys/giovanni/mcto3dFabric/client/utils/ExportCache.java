@@ -0,0 +1,273 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Meshed sections of the previous export of a file, kept in exports/&lt;project&gt;/.cache:
+ * &lt;file&gt;.idx (content hash, offset and length per section) and &lt;file&gt;.bin (the fragments, in section order).
+ * A section is reused as long as its blocks and the 1-block border its culling reads are unchanged.
+ * Usage: get() from the meshing threads, put() every section in order from the stitching thread, then commit().
+ * The cache is only an optimization: its own I/O errors are reported as warnings and never fail the export.
+ */
+public class ExportCache implements Closeable {
+
+    private static final int MAGIC = 0x4D433343; // "MC3C"
+    private static final int VERSION = 2; // Bump whenever a mesher's output changes
+
+    private final File indexFile;
+    private final File dataFile;
+    private final File newIndexFile;
+    private final File newDataFile;
+    private final long context;
+
+    private final Map<SectionedExport.Section, Integer> sectionIds = new HashMap<>();
+    private final long[] hashes;
+
+    // Previous export (offset -1 = not reusable)
+    private final long[] oldOffsets;
+    private final int[] oldLengths;
+    private FileChannel oldData;
+
+    // This export
+    private final long[] newOffsets;
+    private final int[] newLengths;
+    private final FileChannel newData;
+    private long written = 0;
+    private int hits = 0;
+    private boolean committed = false;
+    private boolean failed = false; // A write failed: this export's fragments are dropped, the export goes on
+
+    /**
+     * context identifies everything besides the blocks that changes the fragments (format, scale, options):
+     * a different context (or selection) ignores the previous export.
+     * Returns null (everything is meshed again) if the cache directory can't be used.
+     */
+    public static ExportCache open(File outputFile, long context, VoxelSnapshot snapshot, List<SectionedExport.Section> sections) {
+        File cacheDir = new File(outputFile.getParentFile(), ".cache");
+        try {
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) throw new IOException("Can't create " + cacheDir);
+
+            long fullContext = mix(mix(mix(mix(mix(mix(mix(context, VERSION),
+                    snapshot.getOriginX()), snapshot.getOriginY()), snapshot.getOriginZ()),
+                    snapshot.getSizeX()), snapshot.getSizeY()), snapshot.getSizeZ());
+            return new ExportCache(cacheDir, outputFile.getName(), fullContext, hashSections(snapshot, sections), sections);
+        } catch (IOException e) {
+            System.err.println("Export cache disabled, full re-mesh: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ExportCache(File cacheDir, String name, long context, long[] hashes, List<SectionedExport.Section> sections) throws IOException {
+        this.indexFile = new File(cacheDir, name + ".idx");
+        this.dataFile = new File(cacheDir, name + ".bin");
+        this.newIndexFile = new File(cacheDir, name + ".idx.tmp");
+        this.newDataFile = new File(cacheDir, name + ".bin.tmp");
+        this.context = context;
+        this.hashes = hashes;
+
+        for (int i = 0; i < sections.size(); i++) sectionIds.put(sections.get(i), i);
+        int count = sections.size();
+        oldOffsets = new long[count];
+        oldLengths = new int[count];
+        newOffsets = new long[count];
+        newLengths = new int[count];
+        Arrays.fill(oldOffsets, -1);
+
+        loadIndex();
+        try {
+            newData = FileChannel.open(newDataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            if (oldData != null) oldData.close();
+            throw e;
+        }
+    }
+
+    private void loadIndex() {
+        if (!indexFile.exists() || !dataFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readLong() != context || in.readInt() != hashes.length) return;
+            long[] offsets = new long[hashes.length];
+            int[] lengths = new int[hashes.length];
+            for (int i = 0; i < hashes.length; i++) {
+                long hash = in.readLong();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                if (hash != hashes[i]) offsets[i] = -1;
+            }
+            System.arraycopy(offsets, 0, oldOffsets, 0, offsets.length);
+            System.arraycopy(lengths, 0, oldLengths, 0, lengths.length);
+            oldData = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Unreadable cache = cold export
+            Arrays.fill(oldOffsets, -1);
+        }
+    }
+
+    // Fragment of the previous export, or null if the section changed (thread-safe)
+    public byte[] get(SectionedExport.Section section) {
+        int id = sectionIds.get(section);
+        if (oldData == null || oldOffsets[id] < 0) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(oldLengths[id]);
+        try {
+            long position = oldOffsets[id];
+            while (buffer.hasRemaining()) {
+                int read = oldData.read(buffer, position + buffer.position());
+                if (read < 0) return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        synchronized (this) {
+            hits++;
+        }
+        return buffer.array();
+    }
+
+    // Stores the fragment of the section for the next export (stitching thread, section order)
+    public void put(SectionedExport.Section section, byte[] fragment) {
+        if (failed) return;
+        int id = sectionIds.get(section);
+        newOffsets[id] = written;
+        newLengths[id] = fragment.length;
+        ByteBuffer buffer = ByteBuffer.wrap(fragment);
+        try {
+            while (buffer.hasRemaining()) written += newData.write(buffer);
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Export cache not updated: " + e.getMessage());
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    // Replaces the previous cache with this export's fragments (every section must have been put)
+    public void commit() {
+        if (failed) return; // close() drops the new files, the previous cache stays as it was
+        try {
+            newData.close();
+            if (oldData != null) oldData.close();
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newIndexFile), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(context);
+                out.writeInt(hashes.length);
+                for (int i = 0; i < hashes.length; i++) {
+                    out.writeLong(hashes[i]);
+                    out.writeLong(newOffsets[i]);
+                    out.writeInt(newLengths[i]);
+                }
+            }
+
+            // Index removed first: a crash in between leaves no cache rather than a wrong one
+            Files.deleteIfExists(indexFile.toPath());
+            Files.move(newDataFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            System.out.println("Export cache: " + hits + "/" + hashes.length + " sections reused");
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Export cache not updated: " + e.getMessage());
+            indexFile.delete(); // May no longer match the data file
+        }
+    }
+
+    @Override
+    public void close() {
+        if (committed) return;
+        // Failed export (or failed cache write): keep the previous cache as it was
+        try {
+            newData.close();
+            if (oldData != null) oldData.close();
+            Files.deleteIfExists(newDataFile.toPath());
+            Files.deleteIfExists(newIndexFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Export cache cleanup failed: " + e.getMessage());
+        }
+    }
+
+    // --- HASHING ---
+
+    // Hash of every section's blocks, plus a 1-block border (culling looks at the neighbors)
+    private static long[] hashSections(VoxelSnapshot snapshot, List<SectionedExport.Section> sections) {
+        // Palette indices depend on the capture order: hash what they stand for instead
+        long[] paletteHashes = new long[snapshot.getPaletteSize()];
+        for (int block = 1; block < paletteHashes.length; block++) {
+            paletteHashes[block] = mix(stateHash(snapshot.getState(block)), snapshot.getTint(block));
+        }
+
+        long[] hashes = new long[sections.size()];
+        ExportPool.get().submit(() -> IntStream.range(0, hashes.length).parallel().forEach(i -> {
+            SectionedExport.Section s = sections.get(i);
+            long hash = 0;
+            for (int x = s.minX() - 1; x <= s.maxX() + 1; x++) {
+                for (int y = s.minY() - 1; y <= s.maxY() + 1; y++) {
+                    for (int z = s.minZ() - 1; z <= s.maxZ() + 1; z++) {
+                        hash = mix(hash, paletteHashes[snapshot.get(x, y, z)]);
+                    }
+                }
+            }
+            hashes[i] = hash;
+        })).join();
+        return hashes;
+    }
+
+    // Context key from the settings that shape the fragments, e.g. context("stl", scale)
+    public static long context(Object... settings) {
+        long hash = 0;
+        for (Object setting : settings) hash = mix(hash, textHash(String.valueOf(setting)));
+        return hash;
+    }
+
+    // The state's id and properties, e.g. "Block{minecraft:oak_stairs}[facing=north,...]"
+    private static long stateHash(BlockState state) {
+        return textHash(state.toString());
+    }
+
+    // FNV-1a
+    private static long textHash(String text) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value + 0x9E3779B97F4A7C15L + (hash << 6) + (hash >>> 2);
+        return hash * 0xBF58476D1CE4E5B9L;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Writes the formats selected in ExportOptions from one captured snapshot.
+// Every format gets its own exporter instance (they keep per-export state), so they can run side by side.
+public class ExportFormats {
+
+    /**
+     * Exports every selected format into projectDir. In parallel mode the formats run concurrently on
+     * ExportPool (the snapshot is read-only); progressCallback gets the mean progress of all of them.
+     */
+    public static void export(VoxelSnapshot snapshot, File projectDir, String projectName, ExportOptions options,
+                              float scale, Consumer<Float> progressCallback) throws IOException {
+        List<String> formats = options.getFormats();
+
+        if (!options.isParallel() || formats.size() == 1) {
+            for (int i = 0; i < formats.size(); i++) {
+                int done = i;
+                exportFormat(formats.get(i), snapshot, projectDir, projectName, options, scale,
+                        (p) -> progressCallback.accept((done + p) / formats.size()));
+            }
+            progressCallback.accept(1.0f);
+            return;
+        }
+
+        float[] parts = new float[formats.size()];
+        List<CompletableFuture<Void>> runs = new ArrayList<>();
+        for (int i = 0; i < formats.size(); i++) {
+            int slot = i;
+            String format = formats.get(i);
+            Consumer<Float> partCallback = (p) -> {
+                float total = 0;
+                synchronized (parts) {
+                    parts[slot] = p;
+                    for (float part : parts) total += part;
+                }
+                progressCallback.accept(total / parts.length);
+            };
+            runs.add(CompletableFuture.runAsync(() -> {
+                try {
+                    exportFormat(format, snapshot, projectDir, projectName, options, scale, partCallback);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ExportPool.get()));
+        }
+
+        try {
+            CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // Rethrow what the exporter threw (IOException, or CancellationException from the callback)
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            throw new IOException("Export failed", cause);
+        }
+        progressCallback.accept(1.0f);
+    }
+
+    private static void exportFormat(String format, VoxelSnapshot snapshot, File projectDir, String projectName,
+                                     ExportOptions options, float scale, Consumer<Float> progressCallback) throws IOException {
+        if (options.isGreedy()) {
+            String mode = switch (format) {
+                case ExportOptions.FORMAT_STL -> OptimizedExporter.MODE_STL;
+                case ExportOptions.FORMAT_OBJ_COLOR -> OptimizedExporter.MODE_OBJ_COLOR;
+                case ExportOptions.FORMAT_OBJ_TEXTURE -> OptimizedExporter.MODE_OBJ_TEXTURE;
+                case ExportOptions.FORMAT_GLB -> OptimizedExporter.MODE_GLB;
+                case ExportOptions.FORMAT_3MF -> OptimizedExporter.MODE_3MF;
+                default -> throw new IllegalArgumentException("Unknown format " + format);
+            };
+            new OptimizedExporter(options.isIndexed(), options.isAtlas(), options.isGzip())
+                    .export(snapshot, outputFile(format, projectDir, projectName), mode, options.isSolidify(), scale, progressCallback);
+            return;
+        }
+
+        File file = outputFile(format, projectDir, projectName);
+        switch (format) {
+            case ExportOptions.FORMAT_STL -> new StlExporter(options.isParallel(), options.isCache(), options.isGzip())
+                    .export(snapshot, file, scale, progressCallback);
+            case ExportOptions.FORMAT_OBJ_COLOR -> new ObjExporter(options.isParallel(), options.isIndexed(), options.isAtlas(), options.isCache(), options.isGzip())
+                    .export(snapshot, file, ObjExporter.MODE_COLOR, scale, progressCallback);
+            case ExportOptions.FORMAT_OBJ_TEXTURE -> new ObjExporter(options.isParallel(), options.isIndexed(), options.isAtlas(), options.isCache(), options.isGzip())
+                    .export(snapshot, file, ObjExporter.MODE_TEXTURES, scale, progressCallback);
+            case ExportOptions.FORMAT_GLB -> new GlbExporter(options.isParallel())
+                    .export(snapshot, file, scale, progressCallback);
+            case ExportOptions.FORMAT_3MF -> new ThreeMfExporter(options.isParallel())
+                    .export(snapshot, file, scale, progressCallback);
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    // OBJ exporters take the base name and add .obj/.mtl themselves
+    private static File outputFile(String format, File projectDir, String projectName) {
+        return switch (format) {
+            case ExportOptions.FORMAT_STL -> new File(projectDir, projectName + "_raw.stl");
+            case ExportOptions.FORMAT_OBJ_COLOR -> new File(projectDir, projectName + "_color");
+            case ExportOptions.FORMAT_OBJ_TEXTURE -> new File(projectDir, projectName + "_texture");
+            case ExportOptions.FORMAT_GLB -> new File(projectDir, projectName + ".glb");
+            case ExportOptions.FORMAT_3MF -> new File(projectDir, projectName + "_color.3mf");
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+    }
+}
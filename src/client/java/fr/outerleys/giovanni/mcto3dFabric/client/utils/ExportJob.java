@@ -0,0 +1,95 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// One queued /export3d run: its own progress state (read by the overlay) and a cancel flag.
+// Cancellation is cooperative: the progress callbacks handed to the exporters throw once it is requested,
+// and the exporters call them inside their meshing loops.
+public class ExportJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    // Queued jobs start highest priority first, then in submission order
+    public enum Priority { LOW, NORMAL, HIGH }
+
+    @FunctionalInterface
+    public interface Task {
+        void run(ExportJob job) throws Exception;
+    }
+
+    private final int id;
+    private final String name;
+    private final Priority priority;
+    private final long queuedTime = System.currentTimeMillis();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested = false;
+    private volatile String step = "queued";
+    private volatile float progress = 0f;
+    private volatile long stepStartTime = 0;
+    Future<?> future; // Set by ExportJobManager
+
+    ExportJob(int id, String name) {
+        this(id, name, Priority.NORMAL);
+    }
+
+    ExportJob(int id, String name, Priority priority) {
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+    }
+
+    // --- CALLED BY THE TASK ---
+
+    // Starts a new step, e.g. step("STL"): resets the progress bar and its ETA
+    public void step(String step) {
+        checkCancelled();
+        this.step = step;
+        this.progress = 0f;
+        this.stepStartTime = System.currentTimeMillis();
+    }
+
+    // Progress callback for the exporters (throws CancellationException once the job is cancelled)
+    public Consumer<Float> progress() {
+        return p -> {
+            checkCancelled();
+            progress = p;
+        };
+    }
+
+    public void checkCancelled() {
+        if (cancelRequested) throw new CancellationException("Export #" + id + " cancelled");
+    }
+
+    // --- STATE ---
+
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public Priority getPriority() { return priority; }
+    public Status getStatus() { return status; }
+    public boolean isCancelRequested() { return cancelRequested; }
+    public String getStep() { return step; }
+    public float getProgress() { return progress; }
+    public long getStepStartTime() { return stepStartTime; }
+    public long getQueuedTime() { return queuedTime; }
+}
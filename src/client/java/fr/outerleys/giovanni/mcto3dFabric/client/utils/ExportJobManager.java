@@ -0,0 +1,147 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of /export3d jobs. Jobs run one at a time on a dedicated thread below the game's priority
+ * (the meshing itself goes to ExportPool), so back-to-back exports neither share the common pool with the game
+ * nor fight each other for the cores. Waiting jobs start by priority, then in submission order.
+ * At most MAX_QUEUED jobs wait behind the running one.
+ */
+public class ExportJobManager {
+
+    public static final int MAX_QUEUED = 8;
+
+    // Order in which queued jobs start
+    private static final Comparator<ExportJob> START_ORDER = Comparator.comparing(ExportJob::getPriority).reversed()
+            .thenComparingInt(ExportJob::getId);
+
+    private static final Map<Integer, ExportJob> jobs = new LinkedHashMap<>(); // Queued + running
+    private static int nextId = 1;
+    private static ThreadPoolExecutor executor;
+
+    // What the executor's queue holds: the job's task, ordered like START_ORDER
+    private static class QueuedTask extends FutureTask<Void> implements Comparable<QueuedTask> {
+        private final ExportJob job;
+
+        QueuedTask(ExportJob job, ExportJob.Task task) {
+            super(() -> ExportJobManager.run(job, task), null);
+            this.job = job;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            return START_ORDER.compare(job, other.job);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            // Unbounded queue: submit() enforces MAX_QUEUED itself
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "McTo3D-Export-Job");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    public static ExportJob submit(String name, ExportJob.Task task) {
+        return submit(name, ExportJob.Priority.NORMAL, task);
+    }
+
+    /**
+     * Queues a job. The task reports through job.step() / job.progress() and is expected to let
+     * CancellationException propagate. Returns null if the queue is full.
+     */
+    public static synchronized ExportJob submit(String name, ExportJob.Priority priority, ExportJob.Task task) {
+        if (getQueuedCount() >= MAX_QUEUED) return null;
+
+        ExportJob job = new ExportJob(nextId++, name, priority);
+        QueuedTask queued = new QueuedTask(job, task);
+        job.future = queued;
+        jobs.put(job.getId(), job);
+        executor().execute(queued);
+        return job;
+    }
+
+    private static void run(ExportJob job, ExportJob.Task task) {
+        // Same lock as cancel(): a job it already marked CANCELLED never starts
+        synchronized (ExportJobManager.class) {
+            if (job.getStatus() != ExportJob.Status.QUEUED || job.isCancelRequested()) {
+                if (job.getStatus() == ExportJob.Status.QUEUED) job.setStatus(ExportJob.Status.CANCELLED);
+                jobs.remove(job.getId());
+                return;
+            }
+            job.setStatus(ExportJob.Status.RUNNING);
+        }
+        try {
+            task.run(job);
+            job.setStatus(ExportJob.Status.DONE);
+        } catch (Exception e) {
+            job.setStatus(job.isCancelRequested() ? ExportJob.Status.CANCELLED : ExportJob.Status.FAILED);
+        } finally {
+            synchronized (ExportJobManager.class) {
+                jobs.remove(job.getId());
+            }
+        }
+    }
+
+    // Cancels a queued job right away, or asks the running one to stop at its next progress report
+    public static synchronized boolean cancel(int id) {
+        ExportJob job = jobs.get(id);
+        if (job == null) return false;
+
+        job.cancel();
+        if (job.getStatus() == ExportJob.Status.QUEUED) {
+            job.future.cancel(false);
+            job.setStatus(ExportJob.Status.CANCELLED);
+            jobs.remove(id);
+            executor().purge(); // Frees its slot in the queue
+        }
+        return true;
+    }
+
+    // The job currently exporting, or null
+    public static synchronized ExportJob getRunning() {
+        for (ExportJob job : jobs.values()) {
+            if (job.getStatus() == ExportJob.Status.RUNNING) return job;
+        }
+        return null;
+    }
+
+    // Running job first, then the queued ones in the order they will start
+    public static synchronized List<ExportJob> getJobs() {
+        List<ExportJob> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparing((ExportJob job) -> job.getStatus() != ExportJob.Status.RUNNING).thenComparing(START_ORDER));
+        return list;
+    }
+
+    public static synchronized int getQueuedCount() {
+        int queued = 0;
+        for (ExportJob job : jobs.values()) {
+            if (job.getStatus() == ExportJob.Status.QUEUED) queued++;
+        }
+        return queued;
+    }
+}
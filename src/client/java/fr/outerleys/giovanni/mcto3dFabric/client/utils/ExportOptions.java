@@ -0,0 +1,140 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Optional arguments of /export3d: formats to write, then "key=value" settings
+// (e.g. "/export3d house stl glb engine=greedy solidify=true")
+public class ExportOptions {
+
+    // Output formats, in the order they are listed and written
+    public static final String FORMAT_STL = "stl";                 // <name>_raw.stl
+    public static final String FORMAT_OBJ_COLOR = "obj_color";     // <name>_color.obj
+    public static final String FORMAT_OBJ_TEXTURE = "obj_texture"; // <name>_texture.obj
+    public static final String FORMAT_GLB = "glb";                 // <name>.glb
+    public static final String FORMAT_3MF = "3mf";                 // <name>_color.3mf
+    public static final List<String> ALL_FORMATS = List.of(FORMAT_STL, FORMAT_OBJ_COLOR, FORMAT_OBJ_TEXTURE, FORMAT_GLB, FORMAT_3MF);
+
+    public static final String ENGINE_LEGACY = "legacy"; // One box per block (StlExporter / ObjExporter)
+    public static final String ENGINE_GREEDY = "greedy"; // Merged faces (OptimizedExporter)
+
+    private String engine = ENGINE_LEGACY;
+    private boolean solidify = false;
+    private boolean parallel = true; // parallel=false gives the same files, meshed on a single thread
+    private boolean indexed = true; // Shared vertices in OBJ files (indexed=false: old layout, one copy per box)
+    private Boolean atlas = null; // Textured OBJ: one atlas PNG + one material (atlas=false: one PNG per texture). Unset: legacy only
+    private boolean cache = false; // Reuse unchanged sections of the previous export (exports/<name>/.cache), legacy STL and flat OBJ only
+    private boolean gzip = false; // STL and OBJ written as .stl.gz / .obj.gz, compressed while meshing
+    private ExportJob.Priority priority = ExportJob.Priority.NORMAL; // Start order among queued exports
+    private int lod = 1; // lod=n: every n x n x n blocks become one voxel (vote), exported n times larger
+    private final List<String> formats = new ArrayList<>(); // Empty = all
+
+    public static ExportOptions parse(String raw) {
+        ExportOptions options = new ExportOptions();
+        if (raw == null || raw.isBlank()) return options;
+
+        for (String token : raw.trim().split("\\s+")) {
+            int eq = token.indexOf('=');
+            if (eq < 0) {
+                // Format list, e.g. "stl glb" or "stl,glb"
+                for (String format : token.toLowerCase(Locale.ROOT).split(",")) options.addFormat(format);
+                continue;
+            }
+            if (eq == 0 || eq == token.length() - 1) {
+                throw new IllegalArgumentException("Invalid option '" + token + "' (expected key=value)");
+            }
+            String key = token.substring(0, eq).toLowerCase(Locale.ROOT);
+            String value = token.substring(eq + 1).toLowerCase(Locale.ROOT);
+
+            switch (key) {
+                case "engine" -> {
+                    if (!value.equals(ENGINE_LEGACY) && !value.equals(ENGINE_GREEDY)) {
+                        throw new IllegalArgumentException("Unknown engine '" + value + "' (greedy|legacy)");
+                    }
+                    options.engine = value;
+                }
+                case "solidify" -> options.solidify = parseBoolean(key, value);
+                case "parallel" -> options.parallel = parseBoolean(key, value);
+                case "indexed" -> options.indexed = parseBoolean(key, value);
+                case "atlas" -> options.atlas = parseBoolean(key, value);
+                case "cache" -> options.cache = parseBoolean(key, value);
+                case "gzip" -> options.gzip = parseBoolean(key, value);
+                case "lod" -> options.lod = parseInt(key, value, 1, 64);
+                case "priority" -> {
+                    try {
+                        options.priority = ExportJob.Priority.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown priority '" + value + "' (low|normal|high)");
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option '" + key + "'");
+            }
+        }
+        return options;
+    }
+
+    private void addFormat(String format) {
+        if (format.equals("all")) {
+            formats.clear();
+            formats.addAll(ALL_FORMATS);
+            return;
+        }
+        if (!ALL_FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unknown format '" + format + "' (stl|obj_color|obj_texture|glb|3mf|all)");
+        }
+        if (!formats.contains(format)) formats.add(format);
+    }
+
+    private static int parseInt(String key, String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) return parsed;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Option '" + key + "' expects a number from " + min + " to " + max);
+    }
+
+    private static boolean parseBoolean(String key, String value) {
+        if (value.equals("true") || value.equals("yes") || value.equals("1")) return true;
+        if (value.equals("false") || value.equals("no") || value.equals("0")) return false;
+        throw new IllegalArgumentException("Option '" + key + "' expects true or false");
+    }
+
+    public String getEngine() { return engine; }
+    public boolean isGreedy() { return engine.equals(ENGINE_GREEDY); }
+    public boolean isSolidify() { return solidify; }
+    public boolean isParallel() { return parallel; }
+    public boolean isIndexed() { return indexed; }
+    // The atlas cuts greedy quads back into 1x1 cells (a tile can't repeat), so greedy keeps its merged quads by default
+    public boolean isAtlas() { return atlas != null ? atlas : !isGreedy(); }
+    public boolean isCache() { return cache; }
+    public boolean isGzip() { return gzip; }
+    public int getLod() { return lod; }
+    public ExportJob.Priority getPriority() { return priority; }
+
+    // Selected formats in ALL_FORMATS order (all of them if none was given)
+    public List<String> getFormats() {
+        if (formats.isEmpty()) return ALL_FORMATS;
+        List<String> ordered = new ArrayList<>(ALL_FORMATS);
+        ordered.retainAll(formats);
+        return ordered;
+    }
+
+    // Only the textured formats use the biome tint: the others read the map color and skip the tint lookups
+    public boolean needsTints() {
+        List<String> selected = getFormats();
+        return selected.contains(FORMAT_OBJ_TEXTURE) || selected.contains(FORMAT_GLB);
+    }
+}
@@ -97,19 +97,23 @@ public class GlbConverter {
         }
 
         // --- 7. OBJ Writing ---
-        try (FileWriter writer = new FileWriter(outputObjFile)) {
-            writer.write("# Nvidia Trellis via McTo3D\n");
-            if (textureFilename != null) writer.write("mtllib " + mtlFilename + "\n");
+        try (ObjLineEncoder writer = new ObjLineEncoder(new FileOutputStream(outputObjFile))) {
+            writer.text("# Nvidia Trellis via McTo3D\n");
+            if (textureFilename != null) {
+                writer.text("mtllib ");
+                writer.text(mtlFilename);
+                writer.endLine();
+            }
 
             // Vertices (v)
-            for (float[] v : vertices) writer.write(String.format("v %f %f %f\n", v[0], v[1], v[2]));
+            for (float[] v : vertices) writer.vertex(v[0], v[1], v[2]);
 
             // Texture Coords (vt)
             // Y inversion is often necessary for OBJ format
-            for (float[] uv : uvs) writer.write(String.format("vt %f %f\n", uv[0], 1.0f - uv[1]));
+            for (float[] uv : uvs) writer.texCoord(uv[0], 1.0f - uv[1]);
 
             // Faces (f v/vt/vn)
-            writer.write("usemtl default_ai\n");
+            writer.useMaterial("default_ai");
             boolean hasUV = !uvs.isEmpty();
 
             for (int[] f : faces) {
@@ -117,12 +121,18 @@ public class GlbConverter {
                 int a = f[0] + 1;
                 int b = f[1] + 1;
                 int c = f[2] + 1;
+                writer.faceStart();
                 if (hasUV) {
                     // f v/vt v/vt v/vt
-                    writer.write(String.format("f %d/%d %d/%d %d/%d\n", a, a, b, b, c, c));
+                    writer.faceVertex(a, a);
+                    writer.faceVertex(b, b);
+                    writer.faceVertex(c, c);
                 } else {
-                    writer.write(String.format("f %d %d %d\n", a, b, c));
+                    writer.faceVertex(a);
+                    writer.faceVertex(b);
+                    writer.faceVertex(c);
                 }
+                writer.endLine();
             }
         }
 
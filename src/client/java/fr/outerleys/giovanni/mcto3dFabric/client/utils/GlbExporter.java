@@ -0,0 +1,87 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.registry.Registries;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Textured GLB export of the legacy engine (one box per block shape, see BlockFaces)
+public class GlbExporter {
+
+    // Unit UVs of the 4 corners (glTF has v pointing down)
+    private static final float[] UNIT_UVS = {0, 1, 1, 1, 1, 0, 0, 0};
+
+    private final boolean parallel;
+
+    public GlbExporter() {
+        this(true);
+    }
+
+    // parallel = false meshes the sections one by one on the calling thread (same bytes, easier to debug)
+    public GlbExporter(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void export(VoxelSnapshot snapshot, File file, float scale, Consumer<Float> progressCallback) throws IOException {
+        System.out.println("--- START EXPORT GLB ---");
+
+        GlbWriter writer = new GlbWriter(file, scale);
+        SpriteCache sprites = new SpriteCache();
+        sprites.prefetch(snapshot);
+        int[] materials = new int[snapshot.getPaletteSize()];
+        Arrays.fill(materials, -1);
+        double[] corners = new double[12];
+        OccupancyGrid grid = BlockFaces.grid(snapshot);
+
+        // Faces are meshed on the export pool, materials and textures are registered here in section order
+        try {
+            SectionedExport.forEachOrdered(SectionedExport.split(snapshot), parallel,
+                    section -> BlockFaces.mesh(snapshot, grid, section, false),
+                    (section, faces) -> {
+                        for (int i = 0; i < faces.count; i++) {
+                            int block = faces.blocks[i];
+                            if (materials[block] == -1) materials[block] = registerMaterial(writer, sprites, snapshot, block);
+
+                            System.arraycopy(faces.corners, i * 12, corners, 0, 12);
+                            float[] n = BlockFaces.NORMALS[faces.normals[i]];
+                            writer.quad(materials[block], n[0], n[1], n[2], corners, UNIT_UVS);
+                        }
+                    },
+                    progressCallback);
+        } catch (IOException | RuntimeException e) {
+            writer.abort(); // Failed or cancelled: no partial .glb
+            throw e;
+        }
+        writer.close();
+    }
+
+    private int registerMaterial(GlbWriter writer, SpriteCache sprites, VoxelSnapshot snapshot, int block) {
+        BlockState state = snapshot.getState(block);
+        int tintColor = snapshot.getTint(block);
+
+        String materialName = "mat_" + Registries.BLOCK.getId(state.getBlock()).getPath();
+        if (tintColor != -1) materialName += "_" + Integer.toHexString(tintColor);
+
+        int existing = writer.getMaterial(materialName);
+        if (existing != -1) return existing;
+
+        Sprite sprite = BlockTextures.getSprite(state);
+        // PNG encoded on the export pool; the map color is the fallback if the texture can't be read
+        if (sprite != null) return writer.addTextureMaterial(materialName, sprites.png(sprite, tintColor), snapshot.getMapColor(block));
+        return writer.addColorMaterial(materialName, snapshot.getMapColor(block));
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Binary glTF 2.0 writer: one primitive per material, interleaved position/normal/UV vertices,
+// block textures embedded as PNG images. Quads are collected in memory and written by close().
+public class GlbWriter implements AutoCloseable {
+
+    private static final int MAGIC = 0x46546C67; // "glTF"
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+
+    private static final int FLOATS_PER_VERTEX = 8; // px py pz nx ny nz u v
+    private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+
+    // glTF enums
+    private static final int ARRAY_BUFFER = 34962;
+    private static final int ELEMENT_ARRAY_BUFFER = 34963;
+    private static final int FLOAT = 5126;
+    private static final int UNSIGNED_SHORT = 5123;
+    private static final int UNSIGNED_INT = 5125;
+    private static final int NEAREST = 9728; // Pixel art: no blur
+    private static final int REPEAT = 10497; // Greedy quads tile their texture
+
+    private final File file;
+    private final float scale;
+    private final List<Material> materials = new ArrayList<>();
+    private final Map<String, Integer> materialIds = new HashMap<>();
+
+    private static class Material {
+        final String name;
+        float[] color; // RGBA, used when there is no texture
+        byte[] png;    // null = plain color
+        CompletableFuture<byte[]> pendingPng; // Still being encoded on the export pool
+
+        float[] vertices = new float[FLOATS_PER_VERTEX * 4 * 64];
+        int vertexCount = 0;
+        final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+        Material(String name, float[] color, byte[] png) {
+            this.name = name;
+            this.color = color;
+            this.png = png;
+        }
+    }
+
+    // Positions are given in block units and multiplied by scale
+    public GlbWriter(File file, float scale) {
+        this.file = file;
+        this.scale = scale;
+    }
+
+    // --- MATERIALS ---
+
+    // Index of an already registered material, or -1
+    public int getMaterial(String name) {
+        Integer id = materialIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public int addColorMaterial(String name, int rgb) {
+        return addMaterial(new Material(name, rgba(rgb), null));
+    }
+
+    // The PNG is only awaited in close(), so meshing never waits for image encoding.
+    // If it completes with null (unreadable sprite), the material falls back to the plain color.
+    public int addTextureMaterial(String name, CompletableFuture<byte[]> png, int fallbackRgb) {
+        Material material = new Material(name, rgba(fallbackRgb), null);
+        material.pendingPng = png;
+        return addMaterial(material);
+    }
+
+    private static float[] rgba(int rgb) {
+        float r = ((rgb >> 16) & 0xFF) / 255.0f;
+        float g = ((rgb >> 8) & 0xFF) / 255.0f;
+        float b = (rgb & 0xFF) / 255.0f;
+        return new float[]{r, g, b, 1.0f};
+    }
+
+    private int addMaterial(Material material) {
+        Integer existing = materialIds.get(material.name);
+        if (existing != null) return existing;
+        materials.add(material);
+        materialIds.put(material.name, materials.size() - 1);
+        return materials.size() - 1;
+    }
+
+    // --- GEOMETRY ---
+
+    // corners: 4 x (x, y, z) counter-clockwise seen from the front, uvs: 4 x (u, v)
+    public void quad(int material, float nx, float ny, float nz, double[] corners, float[] uvs) {
+        Material m = materials.get(material);
+        int needed = (m.vertexCount + 4) * FLOATS_PER_VERTEX;
+        if (needed > m.vertices.length) m.vertices = Arrays.copyOf(m.vertices, Math.max(needed, m.vertices.length * 2));
+
+        float[] v = m.vertices;
+        int o = m.vertexCount * FLOATS_PER_VERTEX;
+        for (int i = 0; i < 4; i++) {
+            float x = (float) (corners[i * 3] * scale);
+            float y = (float) (corners[i * 3 + 1] * scale);
+            float z = (float) (corners[i * 3 + 2] * scale);
+            v[o++] = x; v[o++] = y; v[o++] = z;
+            v[o++] = nx; v[o++] = ny; v[o++] = nz;
+            v[o++] = uvs[i * 2]; v[o++] = uvs[i * 2 + 1];
+
+            m.min[0] = Math.min(m.min[0], x); m.max[0] = Math.max(m.max[0], x);
+            m.min[1] = Math.min(m.min[1], y); m.max[1] = Math.max(m.max[1], y);
+            m.min[2] = Math.min(m.min[2], z); m.max[2] = Math.max(m.max[2], z);
+        }
+        m.vertexCount += 4;
+    }
+
+    // --- OUTPUT ---
+
+    @Override
+    public void close() throws IOException {
+        // 0. Collect the textures still being encoded
+        for (Material m : materials) {
+            if (m.pendingPng == null) continue;
+            m.png = m.pendingPng.join();
+            m.pendingPng = null;
+            if (m.png != null) m.color = new float[]{1.0f, 1.0f, 1.0f, 1.0f};
+        }
+
+        JsonObject root = new JsonObject();
+        JsonObject asset = new JsonObject();
+        asset.addProperty("version", "2.0");
+        asset.addProperty("generator", "McTo3D");
+        root.add("asset", asset);
+
+        JsonArray bufferViews = new JsonArray();
+        JsonArray accessors = new JsonArray();
+        JsonArray primitives = new JsonArray();
+        JsonArray gltfMaterials = new JsonArray();
+        JsonArray textures = new JsonArray();
+        JsonArray images = new JsonArray();
+
+        // 1. Lay out the binary chunk: per material its vertices then its indices, then the images
+        long binLength = 0;
+        for (int i = 0; i < materials.size(); i++) {
+            Material m = materials.get(i);
+
+            JsonObject pbr = new JsonObject();
+            JsonArray baseColor = new JsonArray();
+            for (float c : m.color) baseColor.add(c);
+            pbr.add("baseColorFactor", baseColor);
+            pbr.addProperty("metallicFactor", 0.0f);
+            pbr.addProperty("roughnessFactor", 1.0f);
+            JsonObject material = new JsonObject();
+            material.addProperty("name", m.name);
+            if (m.png != null) {
+                JsonObject textureRef = new JsonObject();
+                textureRef.addProperty("index", textures.size());
+                pbr.add("baseColorTexture", textureRef);
+                material.addProperty("alphaMode", "MASK"); // Leaves, glass panes, plants...
+
+                JsonObject texture = new JsonObject();
+                texture.addProperty("sampler", 0);
+                texture.addProperty("source", images.size());
+                textures.add(texture);
+
+                JsonObject image = new JsonObject();
+                image.addProperty("mimeType", "image/png");
+                image.addProperty("bufferView", -1); // Patched below, once the geometry is laid out
+                images.add(image);
+            }
+            material.add("pbrMetallicRoughness", pbr);
+            gltfMaterials.add(material);
+
+            if (m.vertexCount == 0) continue;
+
+            int quadCount = m.vertexCount / 4;
+            boolean shortIndices = m.vertexCount <= 0xFFFF;
+            long vertexBytes = (long) m.vertexCount * VERTEX_STRIDE;
+            long indexBytes = (long) quadCount * 6 * (shortIndices ? 2 : 4);
+
+            int vertexView = bufferViews.size();
+            bufferViews.add(bufferView(binLength, vertexBytes, VERTEX_STRIDE, ARRAY_BUFFER));
+            binLength += vertexBytes;
+            int indexView = bufferViews.size();
+            bufferViews.add(bufferView(binLength, indexBytes, 0, ELEMENT_ARRAY_BUFFER));
+            binLength += pad4(indexBytes);
+
+            JsonObject attributes = new JsonObject();
+            attributes.addProperty("POSITION", accessors.size());
+            JsonObject position = accessor(vertexView, 0, FLOAT, m.vertexCount, "VEC3");
+            JsonArray min = new JsonArray();
+            JsonArray max = new JsonArray();
+            for (int k = 0; k < 3; k++) { min.add(m.min[k]); max.add(m.max[k]); }
+            position.add("min", min);
+            position.add("max", max);
+            accessors.add(position);
+            attributes.addProperty("NORMAL", accessors.size());
+            accessors.add(accessor(vertexView, 12, FLOAT, m.vertexCount, "VEC3"));
+            attributes.addProperty("TEXCOORD_0", accessors.size());
+            accessors.add(accessor(vertexView, 24, FLOAT, m.vertexCount, "VEC2"));
+
+            JsonObject primitive = new JsonObject();
+            primitive.add("attributes", attributes);
+            primitive.addProperty("indices", accessors.size());
+            accessors.add(accessor(indexView, 0, shortIndices ? UNSIGNED_SHORT : UNSIGNED_INT, quadCount * 6, "SCALAR"));
+            primitive.addProperty("material", i);
+            primitive.addProperty("mode", 4); // Triangles
+            primitives.add(primitive);
+        }
+
+        int imageIndex = 0;
+        for (Material m : materials) {
+            if (m.png == null) continue;
+            images.get(imageIndex++).getAsJsonObject().addProperty("bufferView", bufferViews.size());
+            bufferViews.add(bufferView(binLength, m.png.length, 0, 0));
+            binLength += pad4(m.png.length);
+        }
+
+        JsonObject node = new JsonObject();
+        node.addProperty("name", file.getName());
+        if (!primitives.isEmpty()) {
+            JsonObject mesh = new JsonObject();
+            mesh.add("primitives", primitives);
+            JsonArray meshes = new JsonArray();
+            meshes.add(mesh);
+            root.add("meshes", meshes);
+            node.addProperty("mesh", 0);
+        }
+        JsonArray nodes = new JsonArray();
+        nodes.add(node);
+        root.add("nodes", nodes);
+
+        JsonObject scene = new JsonObject();
+        JsonArray sceneNodes = new JsonArray();
+        sceneNodes.add(0);
+        scene.add("nodes", sceneNodes);
+        JsonArray scenes = new JsonArray();
+        scenes.add(scene);
+        root.add("scenes", scenes);
+        root.addProperty("scene", 0);
+
+        if (!gltfMaterials.isEmpty()) root.add("materials", gltfMaterials);
+        if (!textures.isEmpty()) {
+            JsonObject sampler = new JsonObject();
+            sampler.addProperty("magFilter", NEAREST);
+            sampler.addProperty("minFilter", NEAREST);
+            sampler.addProperty("wrapS", REPEAT);
+            sampler.addProperty("wrapT", REPEAT);
+            JsonArray samplers = new JsonArray();
+            samplers.add(sampler);
+            root.add("samplers", samplers);
+            root.add("textures", textures);
+            root.add("images", images);
+        }
+        if (!accessors.isEmpty()) root.add("accessors", accessors);
+        if (!bufferViews.isEmpty()) root.add("bufferViews", bufferViews);
+        if (binLength > 0) {
+            JsonObject buffer = new JsonObject();
+            buffer.addProperty("byteLength", binLength);
+            JsonArray buffers = new JsonArray();
+            buffers.add(buffer);
+            root.add("buffers", buffers);
+        }
+
+        // 2. Write the file: header, JSON chunk (space padded), BIN chunk (zero padded)
+        byte[] json = new Gson().toJson(root).getBytes(StandardCharsets.UTF_8);
+        int jsonLength = (int) pad4(json.length);
+        long totalLength = 12 + 8 + jsonLength + (binLength > 0 ? 8 + binLength : 0);
+        if (totalLength > 0xFFFFFFFFL) throw new IOException("Model too large for a GLB file: " + totalLength + " bytes");
+
+        // Streamed in large windows: one write call per window, not per flush
+        try (BinaryOutput out = BinaryOutput.streamed(file)) {
+            out.reserve(20).putInt(MAGIC).putInt(2).putInt((int) totalLength)
+                    .putInt(jsonLength).putInt(CHUNK_JSON);
+            out.put(json);
+            padWith(out, json.length, (byte) ' ');
+
+            if (binLength > 0) {
+                out.reserve(8).putInt((int) binLength).putInt(CHUNK_BIN);
+
+                for (Material m : materials) {
+                    if (m.vertexCount == 0) continue;
+
+                    // Interleaved vertices
+                    float[] v = m.vertices;
+                    int floats = m.vertexCount * FLOATS_PER_VERTEX;
+                    for (int i = 0; i < floats; ) {
+                        ByteBuffer buffer = out.reserve(4);
+                        int n = Math.min(buffer.remaining() / 4, floats - i);
+                        buffer.asFloatBuffer().put(v, i, n); // Bulk copy, the view keeps the little endian order
+                        buffer.position(buffer.position() + n * 4);
+                        i += n;
+                    }
+
+                    // Two triangles per quad (0-1-2, 0-2-3)
+                    boolean shortIndices = m.vertexCount <= 0xFFFF;
+                    for (int base = 0; base < m.vertexCount; base += 4) {
+                        if (shortIndices) {
+                            out.reserve(12).putShort((short) base).putShort((short) (base + 1)).putShort((short) (base + 2))
+                                    .putShort((short) base).putShort((short) (base + 2)).putShort((short) (base + 3));
+                        } else {
+                            out.reserve(24).putInt(base).putInt(base + 1).putInt(base + 2)
+                                    .putInt(base).putInt(base + 2).putInt(base + 3);
+                        }
+                    }
+                    padWith(out, (long) m.vertexCount / 4 * 6 * (shortIndices ? 2 : 4), (byte) 0);
+                }
+
+                for (Material m : materials) {
+                    if (m.png == null) continue;
+                    out.put(m.png);
+                    padWith(out, m.png.length, (byte) 0);
+                }
+            }
+            if (out.position() != totalLength) throw new IOException("Wrote " + out.position() + " of " + totalLength + " bytes");
+        } catch (IOException | RuntimeException e) {
+            file.delete(); // No half-written .glb
+            throw e;
+        }
+    }
+
+    // Failed or cancelled export: nothing is written (the model only goes to disk in close()), the buffers are dropped
+    public void abort() {
+        for (Material m : materials) {
+            if (m.pendingPng != null) m.pendingPng.cancel(false);
+        }
+        materials.clear();
+        materialIds.clear();
+        file.delete();
+    }
+
+    private static JsonObject bufferView(long offset, long length, int stride, int target) {
+        JsonObject view = new JsonObject();
+        view.addProperty("buffer", 0);
+        view.addProperty("byteOffset", offset);
+        view.addProperty("byteLength", length);
+        if (stride > 0) view.addProperty("byteStride", stride);
+        if (target > 0) view.addProperty("target", target);
+        return view;
+    }
+
+    private static JsonObject accessor(int view, int offset, int componentType, int count, String type) {
+        JsonObject accessor = new JsonObject();
+        accessor.addProperty("bufferView", view);
+        accessor.addProperty("byteOffset", offset);
+        accessor.addProperty("componentType", componentType);
+        accessor.addProperty("count", count);
+        accessor.addProperty("type", type);
+        return accessor;
+    }
+
+    private static long pad4(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    private static void padWith(BinaryOutput out, long writtenLength, byte pad) throws IOException {
+        int padding = (int) (pad4(writtenLength) - writtenLength);
+        ByteBuffer buffer = out.reserve(padding);
+        for (int i = 0; i < padding; i++) buffer.put(pad);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * .gz file written on the fly: write() fills 1 MB blocks, and full blocks are deflated in order on a
+ * background thread while the caller goes on meshing. At most MAX_PENDING blocks wait, so memory stays bounded.
+ * <p>
+ * prefixLength reserves a first gzip member for data only known at the end (the triangle count of an STL):
+ * it is stored uncompressed, so it has a fixed size and is written over its placeholder by close().
+ * Gzip readers decompress consecutive members as one file.
+ * <p>
+ * A failed or cancelled export must call abort() instead of close(): the file is deleted rather than
+ * finished into a valid-looking but truncated .gz.
+ */
+public class GzipOutput extends OutputStream {
+
+    private static final int BLOCK = 1 << 20;
+    private static final int MAX_PENDING = 4;
+    private static final int HEADER = 10, TRAILER = 8, STORED_BLOCK_HEADER = 5;
+
+    private static ExecutorService compressor;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int prefixLength;
+    private byte[] prefix;
+
+    // Used by the compressing thread only (one stage at a time, in order)
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflated = new byte[1 << 16];
+    private long inputLength = 0;
+
+    private byte[] block = new byte[BLOCK];
+    private int blockLength = 0;
+    private final Semaphore slots = new Semaphore(MAX_PENDING);
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+    private boolean closed = false;
+
+    private static synchronized ExecutorService compressor() {
+        if (compressor == null) {
+            compressor = Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "McTo3D-Compress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compressor;
+    }
+
+    // file, or file + ".gz" through a GzipOutput
+    public static OutputStream open(File file, boolean gzip) throws IOException {
+        if (!gzip) return new FileOutputStream(file);
+        return new GzipOutput(gzFile(file), 0);
+    }
+
+    // Abort path of a stream from open(): deletes a partial .gz, just closes a plain file. Never throws
+    public static void abort(OutputStream out) {
+        if (out instanceof GzipOutput gzip) {
+            gzip.abort();
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+
+    public static File gzFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".gz");
+    }
+
+    public GzipOutput(File file, int prefixLength) throws IOException {
+        if (prefixLength > 0xFFFF) throw new IllegalArgumentException("Prefix too long for a stored block: " + prefixLength);
+        this.prefixLength = prefixLength;
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // Placeholder of the prefix member, then the header of the main member
+        if (prefixLength > 0) channel.position(prefixMemberLength());
+        writeFully(ByteBuffer.wrap(header()));
+    }
+
+    private int prefixMemberLength() {
+        return HEADER + STORED_BLOCK_HEADER + prefixLength + TRAILER;
+    }
+
+    // Data of the prefix member (exactly prefixLength bytes), call before close()
+    public void setPrefix(byte[] prefix) {
+        if (prefix.length != prefixLength) throw new IllegalArgumentException("Prefix must be " + prefixLength + " bytes");
+        this.prefix = prefix.clone();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == BLOCK) submitBlock(false);
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (blockLength == BLOCK) submitBlock(false);
+            int n = Math.min(length, BLOCK - blockLength);
+            System.arraycopy(data, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Hands the current block to the compressing thread (waits if MAX_PENDING blocks are already queued)
+    private void submitBlock(boolean last) throws IOException {
+        checkFailure();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        }
+
+        byte[] data = block;
+        int length = blockLength;
+        pending = pending
+                .thenRunAsync(() -> compress(data, length, last), compressor())
+                .whenComplete((r, e) -> slots.release());
+        block = last ? null : new byte[BLOCK];
+        blockLength = 0;
+    }
+
+    private void compress(byte[] data, int length, boolean last) {
+        crc.update(data, 0, length);
+        inputLength += length;
+        deflater.setInput(data, 0, length);
+        if (last) deflater.finish();
+        try {
+            while (last ? !deflater.finished() : !deflater.needsInput()) {
+                int n = deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH);
+                writeFully(ByteBuffer.wrap(deflated, 0, n));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (!pending.isCompletedExceptionally()) return;
+        await();
+    }
+
+    private void await() throws IOException {
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        boolean finished = false;
+        try {
+            submitBlock(true);
+            await();
+            writeFully(trailer(crc.getValue(), inputLength));
+
+            if (prefixLength > 0) {
+                if (prefix == null) throw new IOException("Prefix member never set");
+                channel.position(0);
+                writeFully(prefixMember());
+            }
+            finished = true;
+        } finally {
+            release();
+            if (!finished) file.delete();
+        }
+    }
+
+    // Drops the file: no last block, no trailer (queued blocks are still let through, they own the deflater)
+    public void abort() {
+        if (closed) return;
+        closed = true;
+        release();
+        file.delete();
+    }
+
+    private void release() {
+        pending.exceptionally(e -> null).join(); // Nothing may still use the deflater
+        deflater.end();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to write
+        }
+    }
+
+    // --- GZIP FRAMING (RFC 1952) ---
+
+    private static byte[] header() {
+        // ID1 ID2, deflate, no flags, no mtime, no extra flags, OS unknown
+        return new byte[]{0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+    }
+
+    private static ByteBuffer trailer(long crc, long inputLength) {
+        return ByteBuffer.allocate(TRAILER).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) crc).putInt((int) inputLength) // ISIZE is the length mod 2^32
+                .flip();
+    }
+
+    // Header + one final stored deflate block + trailer
+    private ByteBuffer prefixMember() {
+        CRC32 prefixCrc = new CRC32();
+        prefixCrc.update(prefix);
+
+        ByteBuffer member = ByteBuffer.allocate(prefixMemberLength()).order(ByteOrder.LITTLE_ENDIAN);
+        member.put(header());
+        member.put((byte) 1); // BFINAL = 1, BTYPE = 00 (stored)
+        member.putShort((short) prefixLength).putShort((short) ~prefixLength);
+        member.put(prefix);
+        member.put(trailer(prefixCrc.getValue(), prefixLength));
+        return member.flip();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) channel.write(data);
+    }
+}
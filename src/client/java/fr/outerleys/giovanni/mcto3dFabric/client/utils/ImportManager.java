@@ -10,39 +10,108 @@
 
 package fr.outerleys.giovanni.mcto3dFabric.client.utils;
 
-import net.minecraft.block.BlockState;
-import net.minecraft.util.math.BlockPos;
-import java.util.Map;
+import net.minecraft.client.MinecraftClient;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class ImportManager {
 
     public static boolean isActive = false;
-    public static Map<BlockPos, BlockState> currentVoxels = null;
+    public static VoxelVolume currentVoxels = null;
 
     // Hologram parameters
     public static double distance = 30.0;
     public static int rotationSteps = 0; // 0 = 0°, 1 = 90°, 2 = 180°, etc.
 
+    // Voxelization running in the background (null when idle), shown by the overlay like an export job
+    private static ExportJob importJob = null;
+    private static ExecutorService importThread;
+
+    private static synchronized ExecutorService importThread() {
+        if (importThread == null) {
+            importThread = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "McTo3D-Import");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return importThread;
+    }
+
+    public static ExportJob startImport(File objFile, float scale, Consumer<Integer> onDone, Consumer<Exception> onError) {
+        return startImport(objFile, scale, false, onDone, onError);
+    }
+
+    /**
+     * Voxelizes objFile on the import thread, replacing the import in progress (if any). The finished voxels
+     * are published on the game thread in one go, then onDone gets their count (0 = nothing published).
+     * onError is called on the game thread too. A cancelled import (cancelImport()) calls neither.
+     * fill: solid model (interior filled) instead of a hollow shell.
+     */
+    public static synchronized ExportJob startImport(File objFile, float scale, boolean fill, Consumer<Integer> onDone, Consumer<Exception> onError) {
+        if (importJob != null) importJob.cancel();
+
+        ExportJob job = new ExportJob(0, objFile.getName()); // Id 0: not an export
+        importJob = job;
+        importThread().execute(() -> {
+            job.setStatus(ExportJob.Status.RUNNING);
+            VoxelVolume voxels;
+            try {
+                job.step("Voxelizing");
+                voxels = Voxelizer.loadAndVoxelize(objFile, scale, fill, job.progress());
+            } catch (Exception e) {
+                if (finish(job, ExportJob.Status.FAILED)) MinecraftClient.getInstance().execute(() -> onError.accept(e));
+                return;
+            }
+
+            // Published with the placement settings on the game thread, unless cancelled or replaced meanwhile
+            MinecraftClient.getInstance().execute(() -> {
+                if (!finish(job, ExportJob.Status.DONE)) return;
+                if (!voxels.isEmpty()) {
+                    currentVoxels = voxels;
+                    isActive = true;
+                    // Reset placement settings for a fresh import
+                    rotationSteps = 0;
+                    distance = 5.0;
+                }
+                onDone.accept(voxels.size());
+            });
+        });
+        return job;
+    }
+
+    // Ends the job, false if it was cancelled or replaced by a newer import
+    private static synchronized boolean finish(ExportJob job, ExportJob.Status status) {
+        if (importJob != job || job.isCancelRequested()) {
+            job.setStatus(ExportJob.Status.CANCELLED);
+            return false;
+        }
+        job.setStatus(status);
+        importJob = null;
+        return true;
+    }
+
+    // The running voxelization, or null
+    public static synchronized ExportJob getImportJob() {
+        return importJob;
+    }
+
+    // Stops the voxelization in progress, false if there was none
+    public static synchronized boolean cancelImport() {
+        if (importJob == null) return false;
+        importJob.cancel();
+        importJob = null;
+        return true;
+    }
+
     public static void clear() {
         isActive = false;
         currentVoxels = null;
         rotationSteps = 0;
         distance = 5.0;
     }
-
-    // Checks if a block is "visible" (i.e., has at least one exposed face).
-    // This prevents rendering the interior of the object (Massive optimization).
-    public static boolean isEdge(BlockPos pos) {
-        if (currentVoxels == null) return false;
-
-        // If any neighbor is NOT in the map, then this block is on the edge
-        if (!currentVoxels.containsKey(pos.up())) return true;
-        if (!currentVoxels.containsKey(pos.down())) return true;
-        if (!currentVoxels.containsKey(pos.north())) return true;
-        if (!currentVoxels.containsKey(pos.south())) return true;
-        if (!currentVoxels.containsKey(pos.east())) return true;
-        if (!currentVoxels.containsKey(pos.west())) return true;
-
-        return false; // Surrounded by blocks, hidden
-    }
 }
\ No newline at end of file
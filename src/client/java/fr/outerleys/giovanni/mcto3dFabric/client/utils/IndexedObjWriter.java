@@ -0,0 +1,278 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Indexed OBJ: every lattice point is written once and shared by all the faces touching it,
+// the 6 axis normals and the 4 unit UVs are written once in the header,
+// and faces are grouped by material (one "usemtl" per material instead of one per box).
+// Faces only wait in memory up to MAX_BUFFERED_INTS: past that every material's run is spilled to a temp file,
+// and close() writes each material's runs back to back. Memory stays bounded whatever the model size.
+public class IndexedObjWriter implements Closeable {
+
+    // Normal indices, same order as the legacy per-box normals
+    public static final int NORMAL_DOWN = 1;
+    public static final int NORMAL_UP = 2;
+    public static final int NORMAL_SOUTH = 3;
+    public static final int NORMAL_NORTH = 4;
+    public static final int NORMAL_WEST = 5;
+    public static final int NORMAL_EAST = 6;
+
+    // UV indices of the unit square corners
+    public static final int UV_00 = 1;
+    public static final int UV_10 = 2;
+    public static final int UV_11 = 3;
+    public static final int UV_01 = 4;
+
+    // Positions are snapped to 1/256 block before hashing (the first exact position seen is the one written).
+    // 21 bits per axis, biased so small negative coordinates (shapes poking out of their block) still fit.
+    private static final double QUANTUM = 256.0;
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_BIAS = 1L << (AXIS_BITS - 1);
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    public static final double MAX_EXTENT = (AXIS_BIAS - 1) / QUANTUM; // ~4095 blocks either side of the origin
+
+    private final ObjLineEncoder out;
+    private final float scale;
+    private final LongIntHashMap vertexIds = new LongIntHashMap(1 << 16);
+    private final LongIntHashMap uvIds = new LongIntHashMap(64);
+    private int vertexCount = 0;
+    private int uvCount = 0;
+
+    private static final int MAX_BUFFERED_INTS = FaceList.STRIDE * (1 << 17); // ~4.7 MB of faces
+    private static final int IO_FACES = 2048; // Faces per temp file read / write
+
+    // Faces waiting for close(), by material in order of first use: 4 x (v, vt) + normal per quad
+    private final Map<String, FaceList> facesByMaterial = new LinkedHashMap<>();
+    private int bufferedInts = 0;
+
+    // Spilled runs (created on the first spill, deleted when closed)
+    private FileChannel spill;
+    private long spillLength = 0;
+    private final ByteBuffer io = ByteBuffer.allocate(IO_FACES * FaceList.STRIDE * 4);
+
+    public static boolean fits(VoxelSnapshot snapshot) {
+        int largest = Math.max(snapshot.getSizeX(), Math.max(snapshot.getSizeY(), snapshot.getSizeZ()));
+        return largest + 1 < MAX_EXTENT;
+    }
+
+    // Positions are given in block units and multiplied by scale when written
+    public IndexedObjWriter(File objFile, String mtlFileName, float scale) throws IOException {
+        this(new FileOutputStream(objFile), mtlFileName, scale);
+    }
+
+    // Writes to objOut (e.g. a GzipOutput), closed with the writer
+    public IndexedObjWriter(OutputStream objOut, String mtlFileName, float scale) throws IOException {
+        this.out = new ObjLineEncoder(objOut);
+        this.scale = scale;
+
+        out.text("# Exported by McTo3D\n");
+        out.text("mtllib ");
+        out.text(mtlFileName);
+        out.endLine();
+
+        // Normals (indices NORMAL_*)
+        out.text("vn 0.0 -1.0 0.0\n"); // Down
+        out.text("vn 0.0 1.0 0.0\n");  // Up
+        out.text("vn 0.0 0.0 1.0\n");  // South
+        out.text("vn 0.0 0.0 -1.0\n"); // North
+        out.text("vn -1.0 0.0 0.0\n"); // West
+        out.text("vn 1.0 0.0 0.0\n");  // East
+
+        // Unit UVs (indices UV_*)
+        texCoord(0, 0);
+        texCoord(1, 0);
+        texCoord(1, 1);
+        texCoord(0, 1);
+    }
+
+    // 1-based index of the vertex, written on first use
+    public int vertex(double x, double y, double z) throws IOException {
+        long key = latticeKey(x, y, z);
+        int id = vertexIds.get(key);
+        if (id == LongIntHashMap.MISSING) {
+            id = ++vertexCount;
+            vertexIds.put(key, id);
+            out.vertex(x * scale, y * scale, z * scale);
+        }
+        return id;
+    }
+
+    // 1-based index of the UV, written on first use (UVs are not scaled, and deduplicated exactly:
+    // atlas tiles are finer than the position lattice)
+    public int texCoord(double u, double v) throws IOException {
+        long key = ((long) Float.floatToIntBits((float) u) << 32) | (Float.floatToIntBits((float) v) & 0xFFFFFFFFL);
+        int id = uvIds.get(key);
+        if (id == LongIntHashMap.MISSING) {
+            id = ++uvCount;
+            uvIds.put(key, id);
+            out.texCoord(u, v);
+        }
+        return id;
+    }
+
+    public void quad(String material, int normal, int v1, int v2, int v3, int v4, int t1, int t2, int t3, int t4) throws IOException {
+        facesByMaterial.computeIfAbsent(material, m -> new FaceList())
+                .add(v1, t1, v2, t2, v3, t3, v4, t4, normal);
+        bufferedInts += FaceList.STRIDE;
+        if (bufferedInts >= MAX_BUFFERED_INTS) spillAll();
+    }
+
+    // Unit UVs on the 4 corners (legacy cube mapping)
+    public void quad(String material, int normal, int v1, int v2, int v3, int v4) throws IOException {
+        quad(material, normal, v1, v2, v3, v4, UV_00, UV_10, UV_11, UV_01);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    // Hash key of a position (block units)
+    private static long latticeKey(double x, double y, double z) {
+        return (quantize(x) << (2 * AXIS_BITS)) | (quantize(y) << AXIS_BITS) | quantize(z);
+    }
+
+    private static long quantize(double value) {
+        long q = Math.round(value * QUANTUM) + AXIS_BIAS;
+        if (q < 0 || q > AXIS_MASK) {
+            throw new IllegalArgumentException("Coordinate out of range for an indexed mesh: " + value);
+        }
+        return q;
+    }
+
+    // Appends the buffered faces of every material to the temp file, as one run each
+    private void spillAll() throws IOException {
+        if (spill == null) {
+            spill = FileChannel.open(Files.createTempFile("mcto3d_faces", ".bin"),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        for (FaceList faces : facesByMaterial.values()) {
+            if (faces.size == 0) continue;
+            faces.addRun(spillLength, faces.size);
+            for (int i = 0; i < faces.size; ) {
+                io.clear();
+                int n = Math.min(faces.size - i, io.capacity() / 4);
+                io.asIntBuffer().put(faces.data, i, n);
+                io.limit(n * 4);
+                while (io.hasRemaining()) spillLength += spill.write(io, spillLength);
+                i += n;
+            }
+            faces.clear();
+        }
+        bufferedInts = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            int[] chunk = new int[io.capacity() / 4];
+            for (Map.Entry<String, FaceList> entry : facesByMaterial.entrySet()) {
+                FaceList faces = entry.getValue();
+                out.useMaterial(entry.getKey());
+
+                // Spilled runs first (they were added first), then what is still in memory
+                for (int r = 0; r < faces.runCount; r++) {
+                    long position = faces.runs[2 * r];
+                    long remaining = faces.runs[2 * r + 1];
+                    while (remaining > 0) {
+                        int n = (int) Math.min(remaining, chunk.length);
+                        io.clear();
+                        io.limit(n * 4);
+                        while (io.hasRemaining()) {
+                            if (spill.read(io, position + io.position()) < 0) throw new IOException("Face buffer truncated");
+                        }
+                        io.flip();
+                        io.asIntBuffer().get(chunk, 0, n);
+                        writeFaces(chunk, n);
+                        position += n * 4L;
+                        remaining -= n;
+                    }
+                }
+                writeFaces(faces.data, faces.size);
+            }
+        } finally {
+            facesByMaterial.clear();
+            try {
+                if (spill != null) spill.close(); // Deletes the temp file
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private void writeFaces(int[] f, int size) throws IOException {
+        for (int i = 0; i < size; i += FaceList.STRIDE) {
+            int normal = f[i + 8];
+            out.faceStart();
+            out.faceVertex(f[i], f[i + 1], normal);
+            out.faceVertex(f[i + 2], f[i + 3], normal);
+            out.faceVertex(f[i + 4], f[i + 5], normal);
+            out.faceVertex(f[i + 6], f[i + 7], normal);
+            out.endLine();
+        }
+    }
+
+    // Failed export: the faces are never written, see ObjLineEncoder.abort()
+    public void abort() {
+        facesByMaterial.clear();
+        try {
+            if (spill != null) spill.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        out.abort();
+    }
+
+    // Growable int array, STRIDE ints per quad, plus the (offset, int count) of the runs already spilled
+    private static class FaceList {
+        static final int STRIDE = 9;
+        static final int INITIAL = STRIDE * 256;
+
+        int[] data = new int[INITIAL];
+        int size = 0;
+        long[] runs = new long[8];
+        int runCount = 0;
+
+        void add(int v1, int t1, int v2, int t2, int v3, int t3, int v4, int t4, int normal) {
+            if (size + STRIDE > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = v1; data[size++] = t1;
+            data[size++] = v2; data[size++] = t2;
+            data[size++] = v3; data[size++] = t3;
+            data[size++] = v4; data[size++] = t4;
+            data[size++] = normal;
+        }
+
+        void addRun(long offset, int ints) {
+            if (2 * runCount + 2 > runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * runCount] = offset;
+            runs[2 * runCount + 1] = ints;
+            runCount++;
+        }
+
+        // After a spill: back to a small array, the large one would stay pinned per material
+        void clear() {
+            size = 0;
+            if (data.length > INITIAL) data = new int[INITIAL];
+        }
+    }
+}
@@ -10,46 +10,84 @@
 
 package fr.outerleys.giovanni.mcto3dFabric.client.utils;
 
-import fr.outerleys.giovanni.mcto3dFabric.selection.Cuboid;
 import net.minecraft.block.*;
-import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.texture.NativeImage;
 import net.minecraft.client.texture.Sprite;
 import net.minecraft.registry.Registries;
-import net.minecraft.resource.Resource;
-import net.minecraft.util.Identifier;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.shape.VoxelShape;
-import net.minecraft.world.World;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 
 public class ObjExporter {
 
-    private int vertexCount = 1;
+    private long vertexCount = 0; // Flat OBJ: vertices (and atlas UVs) written so far, see writeRenumbered()
+    private long uvCount = 0;
     private final Set<String> registeredMaterials = new HashSet<>();
+    private SpriteCache sprites; // Per export, see export()
 
     public static final String MODE_NONE = "VIDES";
     public static final String MODE_COLOR = "COULEUR";
     public static final String MODE_TEXTURES = "TEXTURES";
 
-    public void export(Cuboid cuboid, World world, File baseFile, String mode, float scale, Consumer<Float> progressCallback) throws IOException {
-        System.out.println("--- START EXPORT OBJ (" + mode + ") ---");
+    private final boolean parallel;
+    private final boolean indexed;
+    private final boolean atlas;
+    private final boolean cache;
+    private final boolean gzip;
+
+    // Boxes of one section (6 doubles per box, block units relative to the snapshot) with their palette index,
+    // the flat OBJ text when not indexed, and the blocks whose material it uses, in order of first use
+    private record SectionObj(double[] boxes, int[] blocks, int boxCount, byte[] text, Set<Integer> materialBlocks) {}
+
+    public ObjExporter() {
+        this(true, true, true);
+    }
+
+    public ObjExporter(boolean parallel) {
+        this(parallel, true, true);
+    }
+
+    // parallel = false meshes the sections one by one on the calling thread (same bytes, easier to debug)
+    // indexed = false writes the old layout: 8 vertices, 4 UVs and 6 normals per box, absolute indices
+    // atlas = false gives every (texture, tint) its own PNG and material in MODE_TEXTURES
+    public ObjExporter(boolean parallel, boolean indexed, boolean atlas) {
+        this(parallel, indexed, atlas, false); // The cache stays opt-in, like in /export3d
+    }
+
+    // cache = true reuses the flat OBJ text of the sections that didn't change since the last export (see ExportCache).
+    // Indexed files share vertex numbers across sections, so they are always written from scratch.
+    public ObjExporter(boolean parallel, boolean indexed, boolean atlas, boolean cache) {
+        this(parallel, indexed, atlas, cache, false);
+    }
 
-        long totalBlocks = (long) (cuboid.getMaxX() - cuboid.getMinX() + 1) * (long) (cuboid.getMaxY() - cuboid.getMinY() + 1) * (long) (cuboid.getMaxZ() - cuboid.getMinZ() + 1);
-        long currentBlock = 0;
+    // gzip = true writes <name>.obj.gz, compressed in the background while meshing (the MTL and PNGs stay as they are)
+    public ObjExporter(boolean parallel, boolean indexed, boolean atlas, boolean cache, boolean gzip) {
+        this.parallel = parallel;
+        this.indexed = indexed;
+        this.atlas = atlas;
+        this.cache = cache;
+        this.gzip = gzip;
+    }
+
+    public void export(VoxelSnapshot snapshot, File baseFile, String mode, float scale, Consumer<Float> progressCallback) throws IOException {
+        System.out.println("--- START EXPORT OBJ (" + mode + ") ---");
 
-        vertexCount = 1;
+        vertexCount = 0;
+        uvCount = 0;
         registeredMaterials.clear();
+        sprites = new SpriteCache();
+        if (mode.equals(MODE_TEXTURES)) sprites.prefetch(snapshot);
 
         File objFile = new File(baseFile.getParent(), baseFile.getName() + ".obj");
         File mtlFile = new File(baseFile.getParent(), baseFile.getName() + ".mtl");
@@ -57,271 +95,402 @@ public class ObjExporter {
         String textureDirName = baseFile.getName() + "_textures";
         File textureDir = new File(baseFile.getParent(), textureDirName);
 
-        if (mode.equals(MODE_TEXTURES) && !textureDir.exists()) {
+        // Texture atlas: every texture of the palette packed in one PNG, one material for the whole model
+        TextureAtlas textureAtlas = null;
+        int[] tiles = null;
+        File atlasFile = new File(baseFile.getParent(), baseFile.getName() + "_atlas.png");
+        if (mode.equals(MODE_TEXTURES) && atlas) {
+            textureAtlas = new TextureAtlas(sprites);
+            tiles = new int[snapshot.getPaletteSize()];
+            for (int block = 0; block < snapshot.getPaletteSize(); block++) {
+                if (block == VoxelSnapshot.AIR) continue;
+                tiles[block] = textureAtlas.add(snapshot.getState(block), snapshot.getTint(block), snapshot.getMapColor(block));
+            }
+            textureAtlas.build(atlasFile);
+        } else if (mode.equals(MODE_TEXTURES) && !textureDir.exists()) {
             textureDir.mkdirs();
         }
+        TextureAtlas sharedAtlas = textureAtlas;
+        int[] sharedTiles = tiles;
 
-        try (BufferedWriter objWriter = new BufferedWriter(new FileWriter(objFile));
-             BufferedWriter mtlWriter = new BufferedWriter(new FileWriter(mtlFile))) {
-
-            objWriter.write("# Exported by McTo3D\n");
-            objWriter.write("mtllib " + mtlFile.getName() + "\n");
+        boolean useIndex = indexed && IndexedObjWriter.fits(snapshot);
+        if (indexed && !useIndex) {
+            System.out.println("Selection too large for an indexed OBJ, writing a flat one");
+        }
 
+        try (BufferedWriter mtlWriter = new BufferedWriter(new FileWriter(mtlFile))) {
             mtlWriter.write("# Material Library\n");
             writeMaterialColor(mtlWriter, "default_white", 1.0f, 1.0f, 1.0f);
+            if (sharedAtlas != null) {
+                mtlWriter.write("newmtl " + TextureAtlas.MATERIAL + "\n");
+                mtlWriter.write("Kd 1.0 1.0 1.0\n");
+                mtlWriter.write("map_Kd " + atlasFile.getName() + "\n\n");
+            }
 
-            BlockPos.Mutable mutablePos = new BlockPos.Mutable();
-
-            for (int x = cuboid.getMinX(); x <= cuboid.getMaxX(); x++) {
-
-                // Update progress callback
-                float p = (float) currentBlock / totalBlocks;
-                progressCallback.accept(p);
-
-                for (int y = cuboid.getMinY(); y <= cuboid.getMaxY(); y++) {
-                    for (int z = cuboid.getMinZ(); z <= cuboid.getMaxZ(); z++) {
-                        currentBlock++;
-                        mutablePos.set(x, y, z);
-
-                        BlockState state = world.getBlockState(mutablePos);
-                        if (state.isAir()) continue;
-
-                        double relX = x - cuboid.getMinX();
-                        double relY = y - cuboid.getMinY();
-                        double relZ = z - cuboid.getMinZ();
-
-                        // --- MATERIAL HANDLING ---
-                        int tintColor = -1;
-                        if (mode.equals(MODE_TEXTURES)) {
-                            try {
-                                tintColor = MinecraftClient.getInstance().getBlockColors().getColor(state, world, mutablePos, 0);
-                            } catch (Exception e) {
-                                // Ignore color tint errors
-                            }
-                        }
-
-                        String materialName = "mat_" + Registries.BLOCK.getId(state.getBlock()).getPath();
-                        if (tintColor != -1) {
-                            materialName += "_" + Integer.toHexString(tintColor);
-                        }
-
-                        if (!registeredMaterials.contains(materialName)) {
-                            boolean materialWritten = false;
-
-                            if (mode.equals(MODE_COLOR)) {
-                                int colorInt = state.getMapColor(world, mutablePos).color;
-                                float r = ((colorInt >> 16) & 0xFF) / 255.0f;
-                                float g = ((colorInt >> 8) & 0xFF) / 255.0f;
-                                float b = (colorInt & 0xFF) / 255.0f;
-                                writeMaterialColor(mtlWriter, materialName, r, g, b);
-                                materialWritten = true;
-
-                            } else if (mode.equals(MODE_TEXTURES)) {
-                                Sprite sprite = getSprite(state);
-                                if (sprite != null) {
-                                    try {
-                                        String textureFilename = sprite.getContents().getId().getPath().replace("/", "_");
-                                        if (tintColor != -1) textureFilename += "_tinted_" + Integer.toHexString(tintColor);
-
-                                        File textureFile = new File(textureDir, textureFilename + ".png");
-                                        if (!textureFile.exists()) {
-                                            saveSprite(sprite, textureFile, tintColor);
-                                        }
-
-                                        writeMaterialTexture(mtlWriter, materialName, textureFilename, textureDirName);
-                                        materialWritten = true;
-                                    } catch(Exception e) {
-                                        // Fallback if texture saving fails
+            // Sections are meshed on the export pool; materials are registered here, in section order,
+            // so the MTL file (and the texture files) come out the same on every run.
+            if (useIndex) {
+                String[] materialNames = new String[snapshot.getPaletteSize()];
+
+                IndexedObjWriter objWriter = new IndexedObjWriter(GzipOutput.open(objFile, gzip), mtlFile.getName(), scale);
+                try {
+                    SectionedExport.forEachOrdered(SectionedExport.split(snapshot), parallel,
+                            section -> meshSection(snapshot, section, mode, scale, false, null, null),
+                            (section, result) -> {
+                                if (sharedAtlas == null) {
+                                    for (int block : result.materialBlocks()) {
+                                        registerMaterial(mtlWriter, snapshot, block, mode, textureDir, textureDirName);
                                     }
                                 }
-                            }
-
-                            // Fallback to simple color map if texture failed or mode is NONE/COLOR fallback
-                            if (!materialWritten) {
-                                int colorInt = state.getMapColor(world, mutablePos).color;
-                                float r = ((colorInt >> 16) & 0xFF) / 255.0f;
-                                float g = ((colorInt >> 8) & 0xFF) / 255.0f;
-                                float b = (colorInt & 0xFF) / 255.0f;
-                                writeMaterialColor(mtlWriter, materialName, r, g, b);
-                            }
-                            registeredMaterials.add(materialName);
-                        }
-
-                        String currentMat = registeredMaterials.contains(materialName) ? materialName : "default_white";
-
-                        // --- GEOMETRY GENERATION ---
-                        if (isPlantOrFlat(state.getBlock())) {
-                            writePlantCrossObj(objWriter, relX, relY, relZ, currentMat, scale);
-                        } else {
-                            VoxelShape shape = state.getOutlineShape(world, mutablePos);
-                            if (!shape.isEmpty()) {
-                                // Using local variable for IOException handling inside lambda
-                                String finalCurrentMat = currentMat;
-                                shape.forEachBox((minX, minY, minZ, maxX, maxY, maxZ) -> {
-                                    try {
-                                        writeBoxObj(objWriter,
-                                                (relX + minX) * scale, (relY + minY) * scale, (relZ + minZ) * scale,
-                                                (relX + maxX) * scale, (relY + maxY) * scale, (relZ + maxZ) * scale,
-                                                finalCurrentMat);
-                                    } catch (IOException e) {
-                                        throw new RuntimeException(e);
+                                for (int i = 0; i < result.boxCount(); i++) {
+                                    int block = result.blocks()[i];
+                                    if (sharedAtlas != null) {
+                                        writeBoxIndexed(objWriter, result.boxes(), i * 6, TextureAtlas.MATERIAL, sharedAtlas, sharedTiles[block]);
+                                        continue;
                                     }
-                                });
-                            }
-                        }
-                    }
+                                    if (materialNames[block] == null) materialNames[block] = getMaterialName(snapshot, block, mode);
+                                    writeBoxIndexed(objWriter, result.boxes(), i * 6, materialNames[block], null, 0);
+                                }
+                            },
+                            progressCallback);
+                    System.out.println("Indexed OBJ: " + objWriter.getVertexCount() + " shared vertices");
+                } catch (IOException | RuntimeException e) {
+                    objWriter.abort(); // Failed or cancelled: no truncated .obj.gz left behind
+                    throw e;
+                }
+                objWriter.close();
+            } else {
+                List<SectionedExport.Section> sections = SectionedExport.split(snapshot);
+                long context = ExportCache.context("obj", mode, scale, sharedAtlas != null ? sharedAtlas.signature() : "");
+
+                ObjLineEncoder objWriter = new ObjLineEncoder(GzipOutput.open(objFile, gzip));
+                try (ExportCache fragments = cache ? ExportCache.open(objFile, context, snapshot, sections) : null) {
+                    objWriter.text("# Exported by McTo3D\n");
+                    objWriter.text("mtllib " + mtlFile.getName() + "\n");
+
+                    SectionedExport.forEachOrdered(sections, parallel,
+                            section -> {
+                                byte[] cached = fragments != null ? fragments.get(section) : null;
+                                if (cached != null) return new SectionObj(null, null, 0, cached, materialBlocks(snapshot, section));
+                                return meshSection(snapshot, section, mode, scale, true, sharedAtlas, sharedTiles);
+                            },
+                            (section, result) -> {
+                                if (sharedAtlas == null) {
+                                    for (int block : result.materialBlocks()) {
+                                        registerMaterial(mtlWriter, snapshot, block, mode, textureDir, textureDirName);
+                                    }
+                                }
+                                if (fragments != null) fragments.put(section, result.text());
+                                writeRenumbered(objWriter, result.text(), sharedAtlas != null);
+                            },
+                            progressCallback);
+                    if (fragments != null) fragments.commit();
+                } catch (IOException | RuntimeException e) {
+                    objWriter.abort();
+                    throw e;
                 }
+                objWriter.close();
             }
         }
-        progressCallback.accept(1.0f);
+        sprites.await();
     }
 
-    // --- Helpers ---
-
-    private void saveSprite(Sprite sprite, File outputFile, int tintColor) {
-        if (outputFile.exists()) return;
-
-        try {
-            Identifier spriteId = sprite.getContents().getId();
-            // Correct identifier creation for texture path
-            Identifier resourceLocation = Identifier.of(
-                    spriteId.getNamespace(),
-                    "textures/" + spriteId.getPath() + ".png"
-            );
-
-            Optional<Resource> resource = MinecraftClient.getInstance().getResourceManager().getResource(resourceLocation);
-
-            if (resource.isPresent()) {
-                try (InputStream inputStream = resource.get().getInputStream()) {
-                    NativeImage originalImage = NativeImage.read(inputStream);
-
-                    if (tintColor != -1) {
-                        int w = originalImage.getWidth();
-                        int h = originalImage.getHeight();
-                        // Creating a new image for tinted version
-                        NativeImage tintedImage = new NativeImage(w, h, true);
-
-                        int tintR = (tintColor >> 16) & 0xFF;
-                        int tintG = (tintColor >> 8) & 0xFF;
-                        int tintB = (tintColor) & 0xFF;
-
-                        for (int x = 0; x < w; x++) {
-                            for (int y = 0; y < h; y++) {
-                                int pixelColor = originalImage.getColorArgb(x, y);
-
-                                int alpha = (pixelColor >> 24) & 0xFF;
-                                int red = (pixelColor >> 16) & 0xFF;
-                                int green = (pixelColor >> 8) & 0xFF;
-                                int blue = (pixelColor) & 0xFF;
-
-                                if (alpha > 0) {
-                                    int newR = (red * tintR) / 255;
-                                    int newG = (green * tintG) / 255;
-                                    int newB = (blue * tintB) / 255;
-                                    // Reconstruct ARGB
-                                    int newPixel = (alpha << 24) | (newR << 16) | (newG << 8) | newB;
-                                    tintedImage.setColorArgb(x, y, newPixel);
-                                } else {
-                                    tintedImage.setColorArgb(x, y, 0);
-                                }
-                            }
-                        }
-                        tintedImage.writeTo(outputFile.toPath());
-                        tintedImage.close();
+    private SectionObj meshSection(VoxelSnapshot snapshot, SectionedExport.Section section, String mode, float scale, boolean flat,
+                                   TextureAtlas textureAtlas, int[] tiles) {
+        BoxList boxes = new BoxList();
+        Set<Integer> materialBlocks = new LinkedHashSet<>();
+
+        for (int x = section.minX(); x <= section.maxX(); x++) {
+            for (int y = section.minY(); y <= section.maxY(); y++) {
+                for (int z = section.minZ(); z <= section.maxZ(); z++) {
+                    int block = snapshot.get(x, y, z);
+                    if (block == VoxelSnapshot.AIR) continue;
+                    BlockState state = snapshot.getState(block);
+
+                    double relX = x;
+                    double relY = y;
+                    double relZ = z;
+
+                    // --- MATERIAL HANDLING ---
+                    // The definition itself is written by the stitching thread (registerMaterial)
+                    materialBlocks.add(block);
+
+                    // --- GEOMETRY GENERATION ---
+                    if (isPlantOrFlat(state.getBlock())) {
+                        addPlantCross(boxes, block, relX, relY, relZ);
                     } else {
-                        originalImage.writeTo(outputFile.toPath());
+                        VoxelShape shape = snapshot.getShape(block);
+                        if (!shape.isEmpty()) {
+                            shape.forEachBox((minX, minY, minZ, maxX, maxY, maxZ) -> boxes.add(block,
+                                    relX + minX, relY + minY, relZ + minZ,
+                                    relX + maxX, relY + maxY, relZ + maxZ));
+                        }
                     }
-                    originalImage.close();
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Error saving texture: " + outputFile.getName());
         }
+
+        if (!flat) {
+            return new SectionObj(boxes.coords, boxes.blocks, boxes.count, null, materialBlocks);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        String[] materialNames = new String[snapshot.getPaletteSize()];
+        try (ObjLineEncoder objWriter = new ObjLineEncoder(bytes, 8192)) {
+            double[] b = boxes.coords;
+            for (int i = 0; i < boxes.count; i++) {
+                int block = boxes.blocks[i];
+                int o = i * 6;
+                if (textureAtlas != null) {
+                    writeBoxObj(objWriter,
+                            b[o] * scale, b[o + 1] * scale, b[o + 2] * scale,
+                            b[o + 3] * scale, b[o + 4] * scale, b[o + 5] * scale,
+                            TextureAtlas.MATERIAL, i * 8, textureAtlas, tiles[block], i * 4);
+                    continue;
+                }
+                if (materialNames[block] == null) materialNames[block] = getMaterialName(snapshot, block, mode);
+                writeBoxObj(objWriter,
+                        b[o] * scale, b[o + 1] * scale, b[o + 2] * scale,
+                        b[o + 3] * scale, b[o + 4] * scale, b[o + 5] * scale,
+                        materialNames[block], i * 8, null, 0, 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SectionObj(null, null, 0, bytes.toByteArray(), materialBlocks);
     }
 
-    private Sprite getSprite(BlockState state) {
-        try {
-            // FIX: Use 'var' to avoid import issues with BakedModel
-            // The location of BakedModel changes between versions/mappings (render.model vs resources.model)
-            var model = MinecraftClient.getInstance().getBlockRenderManager().getModel(state);
-            return model.particleSprite();
-        } catch (Exception e) {
-            return null;
+    // Same blocks, in the same order, as meshSection's materialBlocks (for sections read back from the cache)
+    private Set<Integer> materialBlocks(VoxelSnapshot snapshot, SectionedExport.Section section) {
+        Set<Integer> materialBlocks = new LinkedHashSet<>();
+        for (int x = section.minX(); x <= section.maxX(); x++) {
+            for (int y = section.minY(); y <= section.maxY(); y++) {
+                for (int z = section.minZ(); z <= section.maxZ(); z++) {
+                    int block = snapshot.get(x, y, z);
+                    if (block != VoxelSnapshot.AIR) materialBlocks.add(block);
+                }
+            }
         }
+        return materialBlocks;
+    }
+
+    private String getMaterialName(VoxelSnapshot snapshot, int block, String mode) {
+        // Tint was resolved against the biome when the snapshot was captured
+        int tintColor = mode.equals(MODE_TEXTURES) ? snapshot.getTint(block) : -1;
+
+        String materialName = "mat_" + Registries.BLOCK.getId(snapshot.getState(block).getBlock()).getPath();
+        if (tintColor != -1) {
+            materialName += "_" + Integer.toHexString(tintColor);
+        }
+        return materialName;
+    }
+
+    private void registerMaterial(BufferedWriter mtlWriter, VoxelSnapshot snapshot, int block, String mode, File textureDir, String textureDirName) throws IOException {
+        String materialName = getMaterialName(snapshot, block, mode);
+        if (registeredMaterials.contains(materialName)) return;
+
+        BlockState state = snapshot.getState(block);
+        int tintColor = mode.equals(MODE_TEXTURES) ? snapshot.getTint(block) : -1;
+        boolean materialWritten = false;
+
+        if (mode.equals(MODE_COLOR)) {
+            int colorInt = snapshot.getMapColor(block);
+            float r = ((colorInt >> 16) & 0xFF) / 255.0f;
+            float g = ((colorInt >> 8) & 0xFF) / 255.0f;
+            float b = (colorInt & 0xFF) / 255.0f;
+            writeMaterialColor(mtlWriter, materialName, r, g, b);
+            materialWritten = true;
+
+        } else if (mode.equals(MODE_TEXTURES)) {
+            Sprite sprite = BlockTextures.getSprite(state);
+            if (sprite != null) {
+                try {
+                    String textureFilename = BlockTextures.textureName(sprite, tintColor);
+
+                    // Decoded, tinted and encoded on the export pool, awaited at the end of export()
+                    sprites.savePng(sprite, tintColor, new File(textureDir, textureFilename + ".png"));
+
+                    writeMaterialTexture(mtlWriter, materialName, textureFilename, textureDirName);
+                    materialWritten = true;
+                } catch(Exception e) {
+                    // Fallback if texture saving fails
+                }
+            }
+        }
+
+        // Fallback to simple color map if texture failed or mode is NONE/COLOR fallback
+        if (!materialWritten) {
+            int colorInt = snapshot.getMapColor(block);
+            float r = ((colorInt >> 16) & 0xFF) / 255.0f;
+            float g = ((colorInt >> 8) & 0xFF) / 255.0f;
+            float b = (colorInt & 0xFF) / 255.0f;
+            writeMaterialColor(mtlWriter, materialName, r, g, b);
+        }
+        registeredMaterials.add(materialName);
     }
 
     // --- OBJ Writing Methods ---
 
-    private void writeBoxObj(BufferedWriter w, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, String matName) throws IOException {
+    // Indices are numbered from the start of the section (vertexBase = vertices before this box in the section),
+    // writeRenumbered() makes them absolute. Without an atlas every face uses UVs 1-4 and normals 1-6, as in the
+    // legacy exporter; with an atlas the 4 UVs are the tile's corners (uvBase = atlas UVs before this box).
+    private void writeBoxObj(ObjLineEncoder w, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, String matName,
+                             int vertexBase, TextureAtlas textureAtlas, int tile, int uvBase) throws IOException {
         // Vertices
-        w.write(String.format(Locale.US, "v %f %f %f\n", minX, minY, maxZ)); // 1
-        w.write(String.format(Locale.US, "v %f %f %f\n", maxX, minY, maxZ)); // 2
-        w.write(String.format(Locale.US, "v %f %f %f\n", maxX, minY, minZ)); // 3
-        w.write(String.format(Locale.US, "v %f %f %f\n", minX, minY, minZ)); // 4
-        w.write(String.format(Locale.US, "v %f %f %f\n", minX, maxY, maxZ)); // 5
-        w.write(String.format(Locale.US, "v %f %f %f\n", maxX, maxY, maxZ)); // 6
-        w.write(String.format(Locale.US, "v %f %f %f\n", maxX, maxY, minZ)); // 7
-        w.write(String.format(Locale.US, "v %f %f %f\n", minX, maxY, minZ)); // 8
+        w.vertex(minX, minY, maxZ); // 1
+        w.vertex(maxX, minY, maxZ); // 2
+        w.vertex(maxX, minY, minZ); // 3
+        w.vertex(minX, minY, minZ); // 4
+        w.vertex(minX, maxY, maxZ); // 5
+        w.vertex(maxX, maxY, maxZ); // 6
+        w.vertex(maxX, maxY, minZ); // 7
+        w.vertex(minX, maxY, minZ); // 8
 
         // Texture Coords (Standard Cube Mapping)
-        w.write("vt 0.0 0.0\n");
-        w.write("vt 1.0 0.0\n");
-        w.write("vt 1.0 1.0\n");
-        w.write("vt 0.0 1.0\n");
+        if (textureAtlas != null) {
+            w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 0));
+            w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 0));
+            w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 1));
+            w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 1));
+        } else {
+            w.text("vt 0.0 0.0\n");
+            w.text("vt 1.0 0.0\n");
+            w.text("vt 1.0 1.0\n");
+            w.text("vt 0.0 1.0\n");
+        }
 
         // Normals
-        w.write("vn 0.0 -1.0 0.0\n"); // Down
-        w.write("vn 0.0 1.0 0.0\n");  // Up
-        w.write("vn 0.0 0.0 1.0\n");  // South
-        w.write("vn 0.0 0.0 -1.0\n"); // North
-        w.write("vn -1.0 0.0 0.0\n"); // West
-        w.write("vn 1.0 0.0 0.0\n");  // East
+        w.text("vn 0.0 -1.0 0.0\n"); // Down
+        w.text("vn 0.0 1.0 0.0\n");  // Up
+        w.text("vn 0.0 0.0 1.0\n");  // South
+        w.text("vn 0.0 0.0 -1.0\n"); // North
+        w.text("vn -1.0 0.0 0.0\n"); // West
+        w.text("vn 1.0 0.0 0.0\n");  // East
 
-        w.write("usemtl " + matName + "\n");
+        w.useMaterial(matName);
 
         // Bottom (4-3-2-1) Normal 1
-        writeQuad(w, 4, 3, 2, 1, 1);
+        writeQuad(w, 4, 3, 2, 1, 1, vertexBase, uvBase);
         // Top (5-6-7-8) Normal 2
-        writeQuad(w, 5, 6, 7, 8, 2);
+        writeQuad(w, 5, 6, 7, 8, 2, vertexBase, uvBase);
         // South (1-2-6-5) Normal 3
-        writeQuad(w, 1, 2, 6, 5, 3);
+        writeQuad(w, 1, 2, 6, 5, 3, vertexBase, uvBase);
         // North (3-4-8-7) Normal 4
-        writeQuad(w, 3, 4, 8, 7, 4);
+        writeQuad(w, 3, 4, 8, 7, 4, vertexBase, uvBase);
         // West (4-1-5-8) Normal 5
-        writeQuad(w, 4, 1, 5, 8, 5);
+        writeQuad(w, 4, 1, 5, 8, 5, vertexBase, uvBase);
         // East (2-3-7-6) Normal 6
-        writeQuad(w, 2, 3, 7, 6, 6);
+        writeQuad(w, 2, 3, 7, 6, 6, vertexBase, uvBase);
 
-        vertexCount += 8;
     }
 
-    private void writeQuad(BufferedWriter w, int v1, int v2, int v3, int v4, int normalIdx) throws IOException {
-        // Absolute vertex index
-        int base = vertexCount - 1;
+    private void writeQuad(ObjLineEncoder w, int v1, int v2, int v3, int v4, int normalIdx, int vertexBase, int uvBase) throws IOException {
+        w.faceStart();
+        w.faceVertex(vertexBase + v1, uvBase + 1, normalIdx);
+        w.faceVertex(vertexBase + v2, uvBase + 2, normalIdx);
+        w.faceVertex(vertexBase + v3, uvBase + 3, normalIdx);
+        w.faceVertex(vertexBase + v4, uvBase + 4, normalIdx);
+        w.endLine();
+    }
+
+    /**
+     * Appends the flat OBJ text of a section, with the vertex indices of its faces (and the UV indices with
+     * an atlas) moved from section numbering to file numbering, the running counts being known here only.
+     * Normals and non-atlas UVs are already absolute. The section text (as cached) stays position-independent.
+     */
+    private void writeRenumbered(ObjLineEncoder out, byte[] text, boolean renumberUvs) throws IOException {
+        long vertices = 0, uvs = 0;
+        int i = 0;
+        while (i < text.length) {
+            boolean face = text[i] == 'f' && i + 1 < text.length && text[i + 1] == ' ';
+            if (text[i] == 'v' && i + 1 < text.length) {
+                if (text[i + 1] == ' ') vertices++;
+                else if (text[i + 1] == 't') uvs++;
+            }
+
+            if (!face) {
+                // Copied as is up to the end of the line
+                while (i < text.length) {
+                    byte c = text[i++];
+                    out.put((char) (c & 0xFF));
+                    if (c == '\n') break;
+                }
+                continue;
+            }
 
-        w.write(String.format("f %d/1/%d %d/2/%d %d/3/%d %d/4/%d\n",
-                base+v1, normalIdx,
-                base+v2, normalIdx,
-                base+v3, normalIdx,
-                base+v4, normalIdx));
+            // "f v/vt/vn ...": the first field gets the vertex offset, the second the UV offset
+            out.put('f');
+            i++;
+            int field = 0;
+            while (i < text.length && text[i] != '\n') {
+                byte c = text[i];
+                if (c >= '0' && c <= '9') {
+                    long value = 0;
+                    while (i < text.length && text[i] >= '0' && text[i] <= '9') value = value * 10 + (text[i++] - '0');
+                    if (field == 0) value += vertexCount;
+                    else if (field == 1 && renumberUvs) value += uvCount;
+                    out.integer(value);
+                    continue;
+                }
+                if (c == '/') field++;
+                else if (c == ' ') field = 0;
+                out.put((char) c);
+                i++;
+            }
+            if (i < text.length) {
+                out.put('\n');
+                i++;
+            }
+        }
+        vertexCount += vertices;
+        uvCount += uvs;
     }
 
-    private void writePlantCrossObj(BufferedWriter w, double x, double y, double z, String mat, float scale) throws IOException {
+    private void writeBoxIndexed(IndexedObjWriter w, double[] box, int o, String matName, TextureAtlas textureAtlas, int tile) throws IOException {
+        double minX = box[o], minY = box[o + 1], minZ = box[o + 2];
+        double maxX = box[o + 3], maxY = box[o + 4], maxZ = box[o + 5];
+
+        // Same corners and faces as writeBoxObj, but shared with the neighbouring boxes
+        int v1 = w.vertex(minX, minY, maxZ);
+        int v2 = w.vertex(maxX, minY, maxZ);
+        int v3 = w.vertex(maxX, minY, minZ);
+        int v4 = w.vertex(minX, minY, minZ);
+        int v5 = w.vertex(minX, maxY, maxZ);
+        int v6 = w.vertex(maxX, maxY, maxZ);
+        int v7 = w.vertex(maxX, maxY, minZ);
+        int v8 = w.vertex(minX, maxY, minZ);
+
+        // Unit UVs, or the corners of the block's tile in the atlas
+        int t1 = IndexedObjWriter.UV_00, t2 = IndexedObjWriter.UV_10, t3 = IndexedObjWriter.UV_11, t4 = IndexedObjWriter.UV_01;
+        if (textureAtlas != null) {
+            t1 = w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 0));
+            t2 = w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 0));
+            t3 = w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 1));
+            t4 = w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 1));
+        }
+
+        w.quad(matName, IndexedObjWriter.NORMAL_DOWN, v4, v3, v2, v1, t1, t2, t3, t4);
+        w.quad(matName, IndexedObjWriter.NORMAL_UP, v5, v6, v7, v8, t1, t2, t3, t4);
+        w.quad(matName, IndexedObjWriter.NORMAL_SOUTH, v1, v2, v6, v5, t1, t2, t3, t4);
+        w.quad(matName, IndexedObjWriter.NORMAL_NORTH, v3, v4, v8, v7, t1, t2, t3, t4);
+        w.quad(matName, IndexedObjWriter.NORMAL_WEST, v4, v1, v5, v8, t1, t2, t3, t4);
+        w.quad(matName, IndexedObjWriter.NORMAL_EAST, v2, v3, v7, v6, t1, t2, t3, t4);
+    }
+
+    private void addPlantCross(BoxList boxes, int block, double x, double y, double z) {
         double thick = 0.01; // Thin planes for plants
         double off = (1.0 - thick) / 2.0;
         double h = 1.0;
 
         // Diagonal 1
-        writeBoxObj(w,
-                (x + off) * scale, y * scale, (z + 0.0) * scale,
-                (x + off + thick) * scale, (y + h) * scale, (z + 1.0) * scale,
-                mat);
+        boxes.add(block,
+                x + off, y, z + 0.0,
+                x + off + thick, y + h, z + 1.0);
 
         // Diagonal 2
-        writeBoxObj(w,
-                (x + 0.0) * scale, y * scale, (z + off) * scale,
-                (x + 1.0) * scale, (y + h) * scale, (z + off + thick) * scale,
-                mat);
+        boxes.add(block,
+                x + 0.0, y, z + off,
+                x + 1.0, y + h, z + off + thick);
     }
 
     private void writeMaterialColor(BufferedWriter w, String name, float r, float g, float b) throws IOException {
@@ -340,4 +509,22 @@ public class ObjExporter {
     private boolean isPlantOrFlat(Block block) {
         return block instanceof PlantBlock || block instanceof TorchBlock || block instanceof AbstractPlantPartBlock;
     }
-}
\ No newline at end of file
+
+    // Growable box buffer of one section
+    private static class BoxList {
+        double[] coords = new double[6 * 256];
+        int[] blocks = new int[256];
+        int count = 0;
+
+        void add(int block, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, count * 2);
+                coords = Arrays.copyOf(coords, count * 12);
+            }
+            int o = count * 6;
+            coords[o] = minX; coords[o + 1] = minY; coords[o + 2] = minZ;
+            coords[o + 3] = maxX; coords[o + 4] = maxY; coords[o + 5] = maxZ;
+            blocks[count++] = block;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Writes OBJ lines straight into a reusable byte buffer: no Formatter, no boxing, no temporary Strings.
+// Decimals match String.format(Locale.US, "%f") (6 digits, '.' separator).
+public class ObjLineEncoder implements Closeable, Flushable {
+
+    private static final long SCALE = 1_000_000L; // 6 decimals, like %f
+    private static final double MAX_FAST = 9.0e12; // Above this, value * SCALE no longer fits in a long
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] digits = new byte[20];
+    private int pos = 0;
+
+    public ObjLineEncoder(OutputStream out) {
+        this(out, 1 << 16);
+    }
+
+    public ObjLineEncoder(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // --- LINES ---
+
+    // "v x y z"
+    public void vertex(double x, double y, double z) throws IOException {
+        put('v'); put(' ');
+        decimal(x); put(' ');
+        decimal(y); put(' ');
+        decimal(z); put('\n');
+    }
+
+    // "vt u v"
+    public void texCoord(double u, double v) throws IOException {
+        put('v'); put('t'); put(' ');
+        decimal(u); put(' ');
+        decimal(v); put('\n');
+    }
+
+    // "vn x y z" (axis normals, written as integers)
+    public void normal(int x, int y, int z) throws IOException {
+        put('v'); put('n'); put(' ');
+        integer(x); put(' ');
+        integer(y); put(' ');
+        integer(z); put('\n');
+    }
+
+    public void useMaterial(String name) throws IOException {
+        text("usemtl ");
+        text(name);
+        put('\n');
+    }
+
+    // Faces are written as: faceStart(), then one faceVertex(...) per corner, then endLine()
+    public void faceStart() throws IOException {
+        put('f');
+    }
+
+    public void faceVertex(long v) throws IOException {
+        put(' ');
+        integer(v);
+    }
+
+    public void faceVertex(long v, long vt) throws IOException {
+        put(' ');
+        integer(v); put('/');
+        integer(vt);
+    }
+
+    public void faceVertex(long v, long vt, long vn) throws IOException {
+        put(' ');
+        integer(v); put('/');
+        integer(vt); put('/');
+        integer(vn);
+    }
+
+    public void endLine() throws IOException {
+        put('\n');
+    }
+
+    // --- PRIMITIVES ---
+
+    public void put(char c) throws IOException {
+        if (pos == buffer.length) flushBuffer();
+        buffer[pos++] = (byte) c;
+    }
+
+    // Keywords, names... ASCII goes straight to the buffer, anything else is encoded as UTF-8
+    public void text(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                for (byte b : text.subSequence(i, text.length()).toString().getBytes(StandardCharsets.UTF_8)) {
+                    if (pos == buffer.length) flushBuffer();
+                    buffer[pos++] = b;
+                }
+                return;
+            }
+            put(c);
+        }
+    }
+
+    public void integer(long value) throws IOException {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) put((char) digits[--n]);
+    }
+
+    // Fixed 6 decimals, rounded half-up like %f
+    public void decimal(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= MAX_FAST) {
+            // Rare: keep the exact Formatter output
+            text(String.format(Locale.US, "%f", value));
+            return;
+        }
+
+        // %f keeps the sign of negative values that round to zero (and of -0.0)
+        if (Double.doubleToRawLongBits(value) < 0) {
+            put('-');
+            value = -value;
+        }
+
+        long scaled = (long) (value * SCALE + 0.5);
+        integer(scaled / SCALE);
+        put('.');
+        long fraction = scaled % SCALE;
+        for (long div = SCALE / 10; div > 0; div /= 10) {
+            put((char) ('0' + (fraction / div) % 10));
+        }
+    }
+
+    // --- OUTPUT ---
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, pos);
+        pos = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    // Failed export: drops the buffered text, see GzipOutput.abort(OutputStream)
+    public void abort() {
+        pos = 0;
+        GzipOutput.abort(out);
+    }
+}
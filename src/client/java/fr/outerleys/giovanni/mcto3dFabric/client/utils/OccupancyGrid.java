@@ -0,0 +1,175 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+
+import java.util.function.Predicate;
+
+/**
+ * Bitsets of a snapshot (solid, opaque full cube, plant/flat), built in one pass before meshing.
+ * Each (x, y) row along Z is packed into longs, bit z of the row = block (x, y, z), so culling and
+ * the diagonal scan work on 64 blocks at a time with shifts and ANDs instead of palette lookups.
+ */
+public class OccupancyGrid {
+
+    // Face order of BlockFaces.NORMALS
+    public static final int DOWN = 0;
+    public static final int UP = 1;
+    public static final int SOUTH = 2;
+    public static final int NORTH = 3;
+    public static final int WEST = 4;
+    public static final int EAST = 5;
+
+    private final int sizeX, sizeY, sizeZ;
+    private final int wordsPerRow;
+    private final long[] solid;
+    private final long[] opaque;
+    private final long[] plant;
+
+    /**
+     * heightMap (may be null) is the solidify heightmap of the greedy engine: air and plants below the
+     * surface of their column count as solid opaque filler, like OptimizedExporter.getEffectiveBlock.
+     */
+    public OccupancyGrid(VoxelSnapshot snapshot, Predicate<BlockState> plantOrFlat, int[][] heightMap) {
+        this.sizeX = snapshot.getSizeX();
+        this.sizeY = snapshot.getSizeY();
+        this.sizeZ = snapshot.getSizeZ();
+        this.wordsPerRow = (sizeZ + 63) >>> 6;
+
+        long words = (long) sizeX * sizeY * wordsPerRow;
+        if (words > Integer.MAX_VALUE) throw new IllegalArgumentException("Selection too large for an occupancy grid");
+        solid = new long[(int) words];
+        opaque = new long[(int) words];
+        plant = new long[(int) words];
+
+        // Palette flags, resolved once per entry
+        int paletteSize = snapshot.getPaletteSize();
+        boolean[] isOpaque = new boolean[paletteSize];
+        boolean[] isPlant = new boolean[paletteSize];
+        for (int block = 1; block < paletteSize; block++) {
+            BlockState state = snapshot.getState(block);
+            isOpaque[block] = state.isOpaqueFullCube();
+            isPlant[block] = plantOrFlat.test(state);
+        }
+
+        for (int x = 0; x < sizeX; x++) {
+            for (int y = 0; y < sizeY; y++) {
+                int row = row(x, y);
+                for (int z = 0; z < sizeZ; z++) {
+                    int block = snapshot.get(x, y, z);
+                    long bit = 1L << z; // Shift distance is taken mod 64
+                    int word = row + (z >>> 6);
+
+                    if (heightMap != null && (block == VoxelSnapshot.AIR || isPlant[block]) && y < heightMap[x][z]) {
+                        solid[word] |= bit;
+                        opaque[word] |= bit;
+                        continue;
+                    }
+                    if (block == VoxelSnapshot.AIR) continue;
+                    solid[word] |= bit;
+                    if (isOpaque[block]) opaque[word] |= bit;
+                    if (isPlant[block]) plant[word] |= bit;
+                }
+            }
+        }
+    }
+
+    private int row(int x, int y) {
+        return (x * sizeY + y) * wordsPerRow;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    // --- SINGLE BLOCKS (false outside the selection) ---
+
+    public boolean isSolid(int x, int y, int z) {
+        return test(solid, x, y, z);
+    }
+
+    public boolean isOpaque(int x, int y, int z) {
+        return test(opaque, x, y, z);
+    }
+
+    public boolean isPlant(int x, int y, int z) {
+        return test(plant, x, y, z);
+    }
+
+    private boolean test(long[] bits, int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) return false;
+        return (bits[row(x, y) + (z >>> 6)] & (1L << z)) != 0;
+    }
+
+    // --- WORDS (bit i = block z = word * 64 + i, 0 outside the selection) ---
+
+    public long solidWord(int x, int y, int word) {
+        return word(solid, x, y, word);
+    }
+
+    public long opaqueWord(int x, int y, int word) {
+        return word(opaque, x, y, word);
+    }
+
+    private long word(long[] bits, int x, int y, int word) {
+        if (x < 0 || y < 0 || x >= sizeX || y >= sizeY || word < 0 || word >= wordsPerRow) return 0;
+        return bits[row(x, y) + word];
+    }
+
+    // Bit i set if the neighbor on that face (DOWN..EAST) of block (x, y, word * 64 + i) is an opaque full cube
+    public long opaqueNeighbors(int face, int x, int y, int word) {
+        return switch (face) {
+            case DOWN -> opaqueWord(x, y - 1, word);
+            case UP -> opaqueWord(x, y + 1, word);
+            case SOUTH -> (opaqueWord(x, y, word) >>> 1) | (opaqueWord(x, y, word + 1) << 63);
+            case NORTH -> (opaqueWord(x, y, word) << 1) | (opaqueWord(x, y, word - 1) >>> 63);
+            case WEST -> opaqueWord(x - 1, y, word);
+            case EAST -> opaqueWord(x + 1, y, word);
+            default -> throw new IllegalArgumentException("Unknown face " + face);
+        };
+    }
+
+    // Opaque full cubes whose 6 neighbors are opaque full cubes too (never visible)
+    public long hiddenCubes(int x, int y, int word) {
+        long hidden = opaqueWord(x, y, word);
+        for (int face = 0; face < 6 && hidden != 0; face++) {
+            hidden &= opaqueNeighbors(face, x, y, word);
+        }
+        return hidden;
+    }
+
+    // --- DIAGONALS ---
+    // Solid non-plant blocks touching only by an edge in the XZ plane, the cells (x, z) .. (x + 1, z + 1):
+    //   slash       [ ][X]     backslash  [X][ ]
+    //               [X][ ]                [ ][X]
+    // Bit i set for the cell whose min corner is block (x, y, word * 64 + i).
+
+    public long diagonalsSlash(int x, int y, int word) {
+        long b00 = solidNonPlant(x, y, word);
+        long b10 = solidNonPlant(x + 1, y, word);
+        long b01 = (b00 >>> 1) | (solidNonPlant(x, y, word + 1) << 63);
+        long b11 = (b10 >>> 1) | (solidNonPlant(x + 1, y, word + 1) << 63);
+        return b10 & b01 & ~b00 & ~b11;
+    }
+
+    public long diagonalsBackslash(int x, int y, int word) {
+        long b00 = solidNonPlant(x, y, word);
+        long b10 = solidNonPlant(x + 1, y, word);
+        long b01 = (b00 >>> 1) | (solidNonPlant(x, y, word + 1) << 63);
+        long b11 = (b10 >>> 1) | (solidNonPlant(x + 1, y, word + 1) << 63);
+        return b00 & b11 & ~b10 & ~b01;
+    }
+
+    private long solidNonPlant(int x, int y, int word) {
+        return word(solid, x, y, word) & ~word(plant, x, y, word);
+    }
+}
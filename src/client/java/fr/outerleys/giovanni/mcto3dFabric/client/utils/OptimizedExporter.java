@@ -10,129 +10,190 @@
 
 package fr.outerleys.giovanni.mcto3dFabric.client.utils;
 
-import fr.outerleys.giovanni.mcto3dFabric.selection.Cuboid;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.block.PlantBlock;
 import net.minecraft.block.TorchBlock;
-import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.texture.NativeImage;
 import net.minecraft.client.texture.Sprite;
 import net.minecraft.registry.Registries;
-import net.minecraft.util.Identifier;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
-import net.minecraft.world.World;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class OptimizedExporter {
 
     public static final String MODE_STL = "STL";
     public static final String MODE_OBJ_COLOR = "OBJ_COLOR";
     public static final String MODE_OBJ_TEXTURE = "OBJ_TEXTURE";
+    public static final String MODE_GLB = "GLB"; // Textured, like OBJ_TEXTURE
+    public static final String MODE_3MF = "3MF"; // Colored, like OBJ_COLOR
 
-    private static class MergedQuad {
-        double minX, minY, minZ, maxX, maxY, maxZ;
-        Direction face;
-        BlockState state;
-        int width, length;
-
-        MergedQuad(double x1, double y1, double z1, double x2, double y2, double z2, Direction face, BlockState state, int w, int l) {
-            this.minX = x1; this.minY = y1; this.minZ = z1;
-            this.maxX = x2; this.maxY = y2; this.maxZ = z2;
-            this.face = face; this.state = state;
-            this.width = w; this.length = l;
+    // Pseudo palette index for the stone used by solidify and the micro-connectors
+    private static final int FILLER = -1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // Constant-size struct-of-arrays quad buffer. The mesher fills it and hands it to the active sink
+    // whenever it is full, so memory depends on the buffer size, not on the selection volume.
+    private static class QuadBuffer {
+        static final int CAPACITY = 4096;
+
+        final double[] box = new double[CAPACITY * 6]; // minX, minY, minZ, maxX, maxY, maxZ (block units)
+        final byte[] faces = new byte[CAPACITY];       // Direction ordinal
+        final int[] blocks = new int[CAPACITY];        // Palette index in the snapshot (or FILLER)
+        final int[] widths = new int[CAPACITY];        // Merged size, in blocks (texture tiling)
+        final int[] lengths = new int[CAPACITY];
+        int count = 0;
+
+        Direction face(int i) {
+            return DIRECTIONS[faces[i]];
         }
     }
 
-    public void export(Cuboid cuboid, World world, File baseFile, String mode, boolean solidify) throws IOException {
-        System.out.println("--- START OPTIMIZED EXPORT (" + mode + ") [Solidify: " + solidify + "] ---");
+    // One output format, fed a buffer at a time while the mesher runs
+    private interface QuadSink extends Closeable {
+        void accept(QuadBuffer quads) throws IOException;
 
-        // 1. Generate main faces (Greedy Meshing)
-        List<MergedQuad> quads = meshChunk(cuboid, world, mode, solidify);
+        // Failed or cancelled export: the partial output is dropped instead of finished
+        void abort() throws IOException;
+    }
 
-        // 2. NON-MANIFOLD FIX (Micro-connectors)
-        // Adds tiny geometry in diagonals to ensure the model is printable (slicers dislike touching edges)
-        addDiagonalFixes(quads, cuboid, world, solidify);
+    private VoxelSnapshot snapshot;
+    private SpriteCache sprites;
+    private OccupancyGrid grid; // Effective blocks (solidify filler included), see export()
+    private final QuadBuffer buffer = new QuadBuffer();
+    private QuadSink sink;
+    private long quadCount;
 
-        System.out.println("-> Faces generated (with fix): " + quads.size());
+    private final boolean indexed;
+    private final boolean atlas;
+    private final boolean gzip;
 
-        if (mode.equals(MODE_STL)) {
-            writeBinaryStl(quads, baseFile);
-        } else {
-            writeObj(quads, baseFile, mode, world);
+    // Same defaults as engine=greedy: no atlas, the merged quads are kept
+    public OptimizedExporter() {
+        this(true, false);
+    }
+
+    // indexed = false repeats the vertices, UVs and normals of every quad (old OBJ layout)
+    // atlas = false gives every (texture, tint) its own PNG and material in MODE_OBJ_TEXTURE
+    public OptimizedExporter(boolean indexed, boolean atlas) {
+        this(indexed, atlas, false);
+    }
+
+    // gzip = true writes the STL and OBJ files as .gz, compressed in the background while meshing
+    public OptimizedExporter(boolean indexed, boolean atlas, boolean gzip) {
+        this.indexed = indexed;
+        this.atlas = atlas;
+        this.gzip = gzip;
+    }
+
+    public void export(VoxelSnapshot snapshot, File baseFile, String mode, boolean solidify, float scale, Consumer<Float> progressCallback) throws IOException {
+        System.out.println("--- START OPTIMIZED EXPORT (" + mode + ") [Solidify: " + solidify + "] ---");
+        this.snapshot = snapshot;
+        this.sprites = new SpriteCache();
+        if (isTextured(mode)) sprites.prefetch(snapshot);
+
+        // 0. HEIGHTMAP (only needed to solidify), shared by the mesher and the diagonal scanner
+        int[][] heightMap = solidify ? buildHeightMap() : null;
+        this.grid = new OccupancyGrid(snapshot, this::isPlantOrFlat, heightMap);
+
+        // 1. Open the writer: quads are streamed to it as they are meshed
+        sink = openSink(baseFile, mode, scale);
+        buffer.count = 0;
+        quadCount = 0;
+        QuadSink output = sink;
+        try {
+            // 2. Generate main faces (Greedy Meshing)
+            meshChunk(mode, heightMap, (p) -> progressCallback.accept(p * 0.8f));
+
+            // 3. NON-MANIFOLD FIX (Micro-connectors)
+            // Adds tiny geometry in diagonals to ensure the model is printable (slicers dislike touching edges)
+            addDiagonalFixes();
+            flushQuads();
+            progressCallback.accept(0.9f);
+        } catch (IOException | RuntimeException e) {
+            try {
+                output.abort();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        } finally {
+            sink = null;
         }
+        output.close();
+
+        System.out.println("-> Faces generated (with fix): " + quadCount);
+        sprites.await();
+        progressCallback.accept(1.0f);
     }
 
-    // --- DIAGONAL SCANNER ---
-    private void addDiagonalFixes(List<MergedQuad> quads, Cuboid c, World world, boolean solidify) {
-        // Need a temporary HeightMap to know where the solid part ends
-        int sizeX = c.getMaxX() - c.getMinX() + 1;
-        int sizeZ = c.getMaxZ() - c.getMinZ() + 1;
+    // Highest solid block of each column (Integer.MIN_VALUE if the column is empty)
+    private int[][] buildHeightMap() {
+        int sizeX = snapshot.getSizeX();
+        int sizeZ = snapshot.getSizeZ();
         int[][] heightMap = new int[sizeX][sizeZ];
 
-        if (solidify) {
-            for (int[] row : heightMap) Arrays.fill(row, Integer.MIN_VALUE);
-            BlockPos.Mutable p = new BlockPos.Mutable();
-            for (int x = 0; x < sizeX; x++) {
-                for (int z = 0; z < sizeZ; z++) {
-                    int realX = c.getMinX() + x;
-                    int realZ = c.getMinZ() + z;
-                    for (int y = c.getMaxY(); y >= c.getMinY(); y--) {
-                        p.set(realX, y, realZ);
-                        BlockState s = world.getBlockState(p);
-                        if (!s.isAir() && !isPlantOrFlat(s)) { heightMap[x][z] = y; break; }
-                    }
+        for (int[] row : heightMap) Arrays.fill(row, Integer.MIN_VALUE);
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = 0; z < sizeZ; z++) {
+                for (int y = snapshot.getSizeY() - 1; y >= 0; y--) {
+                    int block = snapshot.get(x, y, z);
+                    if (block != VoxelSnapshot.AIR && !isPlantOrFlat(snapshot.getState(block))) { heightMap[x][z] = y; break; }
                 }
             }
         }
+        return heightMap;
+    }
+
+    // --- DIAGONAL SCANNER ---
+    private void addDiagonalFixes() throws IOException {
+        int sizeX = snapshot.getSizeX();
+        int sizeY = snapshot.getSizeY();
 
         // Scan the cuboid for Checkerboard patterns
         // [A][ ]
         // [ ][B]
         // If A and B are solid, but the empty spaces are air, they need connection.
+        // The grid checks 64 cells along Z at a time (solid = not air and not a plant, filler included).
 
         double eps = 0.02; // Connector thickness (very thin)
 
-        for (int x = c.getMinX(); x < c.getMaxX(); x++) { // < MaxX because we check x+1
-            for (int z = c.getMinZ(); z < c.getMaxZ(); z++) { // < MaxZ because we check z+1
-                for (int y = c.getMinY(); y <= c.getMaxY(); y++) {
-
-                    // Get effective state of the 4 blocks
-                    boolean b00 = isSolidEffective(world, x, y, z, c, heightMap, solidify);     // x, z
-                    boolean b11 = isSolidEffective(world, x+1, y, z+1, c, heightMap, solidify); // x+1, z+1
-                    boolean b10 = isSolidEffective(world, x+1, y, z, c, heightMap, solidify);   // x+1, z
-                    boolean b01 = isSolidEffective(world, x, y, z+1, c, heightMap, solidify);   // x, z+1
-
+        for (int x = 0; x < sizeX - 1; x++) { // < MaxX because we check x+1
+            for (int y = 0; y < sizeY; y++) {
+                for (int word = 0; word < grid.getWordsPerRow(); word++) {
                     // Case 1: Diagonal /
                     // [ ][X]
                     // [X][ ]
-                    if (b10 && b01 && !b00 && !b11) {
-                        // Add micro pillar at center
-                        addMicroConnector(quads, x, y, z, c, 1.0, 0.0, 1.0, 0.0, eps);
-                    }
-
+                    long slash = grid.diagonalsSlash(x, y, word);
                     // Case 2: Diagonal \
                     // [X][ ]
                     // [ ][X]
-                    if (b00 && b11 && !b10 && !b01) {
-                        addMicroConnector(quads, x, y, z, c, 1.0, 1.0, 1.0, 1.0, eps);
+                    long backslash = grid.diagonalsBackslash(x, y, word);
+
+                    long cells = slash | backslash;
+                    while (cells != 0) {
+                        int bit = Long.numberOfTrailingZeros(cells);
+                        cells &= cells - 1;
+                        int z = (word << 6) + bit;
+
+                        // Add micro pillar at center
+                        if ((slash & (1L << bit)) != 0) addMicroConnector(x, y, z, 1.0, 0.0, 1.0, 0.0, eps);
+                        if ((backslash & (1L << bit)) != 0) addMicroConnector(x, y, z, 1.0, 1.0, 1.0, 1.0, eps);
                     }
                 }
             }
         }
     }
 
-    private void addMicroConnector(List<MergedQuad> quads, int x, int y, int z, Cuboid c, double offX, double offZ, double centerX, double centerZ, double eps) {
+    private void addMicroConnector(int x, int y, int z, double offX, double offZ, double centerX, double centerZ, double eps) throws IOException {
         // Create a small junction cube
         // Relative coords
-        double rx = x - c.getMinX();
-        double ry = y - c.getMinY();
-        double rz = z - c.getMinZ();
+        double rx = x;
+        double ry = y;
+        double rz = z;
 
         // Position exactly at intersection
         double cx = rx + offX;
@@ -145,165 +206,166 @@ public class OptimizedExporter {
 
         // Add 6 faces for this micro-cube
         // Using Stone as filler material
-        BlockState filler = Blocks.STONE.getDefaultState();
-
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.UP, filler, 1, 1));
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.DOWN, filler, 1, 1));
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.NORTH, filler, 1, 1));
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.SOUTH, filler, 1, 1));
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.EAST, filler, 1, 1));
-        quads.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, Direction.WEST, filler, 1, 1));
-    }
-
-    private boolean isSolidEffective(World world, int x, int y, int z, Cuboid c, int[][] heightMap, boolean solidify) {
-        BlockState s = getEffectiveState(world, x, y, z, c, heightMap, solidify);
-        // Considered solid if not air and not a plant (so a full cube)
-        return !s.isAir() && !isPlantOrFlat(s);
+        int filler = FILLER;
+
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.UP, filler, 1, 1);
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.DOWN, filler, 1, 1);
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.NORTH, filler, 1, 1);
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.SOUTH, filler, 1, 1);
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.EAST, filler, 1, 1);
+        emit(minX, minY, minZ, maxX, maxY, maxZ, Direction.WEST, filler, 1, 1);
     }
 
     // --- CORE SYSTEM (Greedy Meshing) ---
-    private List<MergedQuad> meshChunk(Cuboid c, World world, String mode, boolean solidify) {
-        List<MergedQuad> result = new ArrayList<>();
-
-        // 1. PRE-CALCULATE HEIGHTMAP
-        int sizeX = c.getMaxX() - c.getMinX() + 1;
-        int sizeZ = c.getMaxZ() - c.getMinZ() + 1;
-        int[][] heightMap = new int[sizeX][sizeZ];
-
-        if (solidify) {
-            for (int[] row : heightMap) Arrays.fill(row, Integer.MIN_VALUE);
-            BlockPos.Mutable p = new BlockPos.Mutable();
-            for (int x = 0; x < sizeX; x++) {
-                for (int z = 0; z < sizeZ; z++) {
-                    int realX = c.getMinX() + x;
-                    int realZ = c.getMinZ() + z;
-                    for (int y = c.getMaxY(); y >= c.getMinY(); y--) {
-                        p.set(realX, y, realZ);
-                        BlockState s = world.getBlockState(p);
-                        if (!s.isAir() && !isPlantOrFlat(s)) { heightMap[x][z] = y; break; }
-                    }
-                }
-            }
-        }
-
-        // 2. GREEDY MESHING LOOP
+    // Each slice (one "d" layer of one direction) gets a mask of its visible faces, then rectangles are
+    // grown along u and then along v over faces that share a material (see canMerge).
+    private void meshChunk(String mode, int[][] heightMap, Consumer<Float> progressCallback) throws IOException {
+        int sizeX = snapshot.getSizeX();
+        int sizeY = snapshot.getSizeY();
+        int sizeZ = snapshot.getSizeZ();
+
+        // Progress is counted in slices (one "d" layer of one direction)
+        int totalSlices = 2 * (sizeX + sizeY + sizeZ);
+        int doneSlices = 0;
+
+        // GREEDY MESHING LOOP (relative coordinates)
         for (Direction dir : Direction.values()) {
             boolean isY = dir.getAxis() == Direction.Axis.Y;
             boolean isX = dir.getAxis() == Direction.Axis.X;
 
-            int uMin = isX ? c.getMinY() : c.getMinX();
-            int uMax = isX ? c.getMaxY() : c.getMaxX();
-            int vMin = isY ? c.getMinZ() : c.getMinZ();
-            if (dir.getAxis() == Direction.Axis.Z) vMin = c.getMinY();
-            int vMax = isY ? c.getMaxZ() : c.getMaxZ();
-            if (dir.getAxis() == Direction.Axis.Z) vMax = c.getMaxY();
-
-            int dMin = isY ? c.getMinY() : (isX ? c.getMinX() : c.getMinZ());
-            int dMax = isY ? c.getMaxY() : (isX ? c.getMaxX() : c.getMaxZ());
-
-            for (int d = dMin; d <= dMax; d++) {
-                for (int v = vMin; v <= vMax; v++) {
-                    BlockState lastState = null;
-                    int runStartU = -1;
-
-                    for (int u = uMin; u <= uMax + 1; u++) {
-                        BlockState currentState = null;
-
-                        if (u <= uMax) {
-                            int x, y, z;
-                            if (isY) { x = u; y = d; z = v; }
-                            else if (isX) { x = d; y = u; z = v; }
-                            else { x = u; y = v; z = d; }
-
-                            BlockState s = getEffectiveState(world, x, y, z, c, heightMap, solidify);
-
-                            if (!s.isAir()) {
-                                int nX = x + dir.getOffsetX();
-                                int nY = y + dir.getOffsetY();
-                                int nZ = z + dir.getOffsetZ();
-                                BlockState neighborState = getEffectiveState(world, nX, nY, nZ, c, heightMap, solidify);
-
-                                // Optimization: Only mesh if neighbor is not fully opaque
-                                if (!neighborState.isOpaqueFullCube()) {
-                                    currentState = s;
-                                }
-                            }
+            int uSize = isX ? sizeY : sizeX;
+            int vSize = dir.getAxis() == Direction.Axis.Z ? sizeY : sizeZ;
+            int dSize = isY ? sizeY : (isX ? sizeX : sizeZ);
+
+            // Visible face of each (u, v) cell of the slice: its effective block, or AIR
+            int[] mask = new int[uSize * vSize];
+
+            for (int d = 0; d < dSize; d++) {
+                progressCallback.accept((float) doneSlices++ / totalSlices);
+
+                boolean empty = true;
+                for (int v = 0; v < vSize; v++) {
+                    for (int u = 0; u < uSize; u++) {
+                        int x, y, z;
+                        if (isY) { x = u; y = d; z = v; }
+                        else if (isX) { x = d; y = u; z = v; }
+                        else { x = u; y = v; z = d; }
+
+                        int block = VoxelSnapshot.AIR;
+                        // Optimization: Only mesh if neighbor is not fully opaque (two bit tests before any palette lookup)
+                        if (grid.isSolid(x, y, z) && !grid.isOpaque(x + dir.getOffsetX(), y + dir.getOffsetY(), z + dir.getOffsetZ())) {
+                            block = getEffectiveBlock(x, y, z, heightMap);
+                            empty = false;
                         }
-
-                        boolean matches = false;
-                        if (lastState != null && currentState != null) {
-                            if (lastState.getBlock() == currentState.getBlock()) {
-                                matches = true;
-                                if (mode.equals(MODE_OBJ_COLOR)) {
-                                    matches = (lastState.getMapColor(world, null) == currentState.getMapColor(world, null));
-                                }
+                        mask[v * uSize + u] = block;
+                    }
+                }
+                if (empty) continue;
+
+                for (int v = 0; v < vSize; v++) {
+                    for (int u = 0; u < uSize; ) {
+                        int block = mask[v * uSize + u];
+                        if (block == VoxelSnapshot.AIR) { u++; continue; }
+
+                        // Grow along u...
+                        int width = 1;
+                        while (u + width < uSize && canMerge(block, mask[v * uSize + u + width], mode)) width++;
+
+                        // ...then along v, while the whole row below matches
+                        int length = 1;
+                        grow:
+                        while (v + length < vSize) {
+                            int row = (v + length) * uSize;
+                            for (int k = 0; k < width; k++) {
+                                if (!canMerge(block, mask[row + u + k], mode)) break grow;
                             }
+                            length++;
                         }
 
-                        if (!matches) {
-                            if (lastState != null) {
-                                int lengthRect = u - runStartU;
-                                addQuad(result, dir, lastState, isX, isY, d, v, runStartU, u, c, lengthRect);
-                            }
-                            lastState = currentState;
-                            runStartU = u;
+                        // Consume the rectangle
+                        for (int l = 0; l < length; l++) {
+                            Arrays.fill(mask, (v + l) * uSize + u, (v + l) * uSize + u + width, VoxelSnapshot.AIR);
                         }
+                        addQuad(dir, block, d, u, u + width, v, v + length);
+                        u += width;
                     }
                 }
             }
         }
-        return result;
     }
 
-    private BlockState getEffectiveState(World world, int x, int y, int z, Cuboid c, int[][] heightMap, boolean solidify) {
-        if (x < c.getMinX() || x > c.getMaxX() ||
-                y < c.getMinY() || y > c.getMaxY() ||
-                z < c.getMinZ() || z > c.getMaxZ()) {
-            return Blocks.AIR.getDefaultState();
+    // Two faces can share a quad if they get the same material in this mode
+    private boolean canMerge(int block, int other, String mode) {
+        if (other == VoxelSnapshot.AIR) return false;
+        if (other == block) return true;
+        if (stateOf(block).getBlock() != stateOf(other).getBlock()) return false;
+
+        if (mode.equals(MODE_OBJ_COLOR) || mode.equals(MODE_3MF)) {
+            return mapColorOf(block) == mapColorOf(other);
+        } else if (isTextured(mode)) {
+            // Different tints are different materials
+            return tintOf(block) == tintOf(other);
         }
+        return true;
+    }
 
-        BlockPos pos = new BlockPos(x, y, z);
-        BlockState realState = world.getBlockState(pos);
+    // Palette index of the block as exported (solidify turns air/plants below the surface into FILLER)
+    private int getEffectiveBlock(int x, int y, int z, int[][] heightMap) {
+        int block = snapshot.get(x, y, z); // Air outside the selection
+        if (x < 0 || z < 0 || x >= snapshot.getSizeX() || z >= snapshot.getSizeZ()) return block;
 
-        if (solidify) {
-            int relX = x - c.getMinX();
-            int relZ = z - c.getMinZ();
-            if ((realState.isAir() || isPlantOrFlat(realState)) && heightMap != null) {
-                if (y < heightMap[relX][relZ]) {
-                    return Blocks.STONE.getDefaultState();
+        if (heightMap != null) {
+            if ((block == VoxelSnapshot.AIR || isPlantOrFlat(stateOf(block))) && y >= 0) {
+                if (y < heightMap[x][z]) {
+                    return FILLER;
                 }
             }
         }
-        return realState;
+        return block;
     }
 
-    private void addQuad(List<MergedQuad> result, Direction dir, BlockState state, boolean isX, boolean isY, int d, int v, int startU, int endU, Cuboid c, int length) {
-        int sX=0, sY=0, sZ=0, eX=0, eY=0, eZ=0;
-        if (isY) { sX=startU; sY=d; sZ=v;  eX=endU; eY=d+1; eZ=v+1; if(dir==Direction.DOWN) {eY=d; sY=d;} else {sY=d+1;eY=d+1;} }
-        else if (isX) { sX=d; sY=startU; sZ=v; eX=d+1; eY=endU; eZ=v+1; if(dir==Direction.WEST) {eX=d; sX=d;} else {sX=d+1;eX=d+1;} }
-        else { sX=startU; sY=v; sZ=d; eX=endU; eY=v+1; eZ=d+1; if(dir==Direction.NORTH) {eZ=d; sZ=d;} else {sZ=d+1;eZ=d+1;} }
+    private BlockState stateOf(int block) {
+        return block == FILLER ? Blocks.STONE.getDefaultState() : snapshot.getState(block);
+    }
+
+    private int mapColorOf(int block) {
+        return block == FILLER ? Blocks.STONE.getDefaultMapColor().color : snapshot.getMapColor(block);
+    }
 
-        double minX = Math.min(sX, eX); double maxX = Math.max(sX, eX);
-        double minY = Math.min(sY, eY); double maxY = Math.max(sY, eY);
-        double minZ = Math.min(sZ, eZ); double maxZ = Math.max(sZ, eZ);
+    private int tintOf(int block) {
+        return block == FILLER ? -1 : snapshot.getTint(block);
+    }
 
-        // Adjust coordinates based on face direction to create a flat quad
-        if (dir == Direction.UP) { minY = d + 1; maxY = d + 1; }
-        if (dir == Direction.DOWN) { minY = d; maxY = d; }
-        if (dir == Direction.EAST) { minX = d + 1; maxX = d + 1; }
-        if (dir == Direction.WEST) { minX = d; maxX = d; }
-        if (dir == Direction.SOUTH) { minZ = d + 1; maxZ = d + 1; }
-        if (dir == Direction.NORTH) { minZ = d; maxZ = d; }
+    // Rectangle [u0, u1) x [v0, v1) of slice d. Width and length are the sizes along the first and second
+    // edge of quadCorners (the texture's u and v), so tiled textures keep one repeat per block.
+    private void addQuad(Direction dir, int block, int d, int u0, int u1, int v0, int v1) throws IOException {
+        // Faces pointing to positive coordinates sit on the far side of the block
+        int plane = dir.getDirection() == Direction.AxisDirection.POSITIVE ? d + 1 : d;
 
-        if (dir == Direction.UP || dir == Direction.DOWN) { maxX = endU; minX = startU; maxZ = v + 1; minZ = v; }
-        if (dir == Direction.EAST || dir == Direction.WEST) { maxY = endU; minY = startU; maxZ = v + 1; minZ = v; }
-        if (dir == Direction.SOUTH || dir == Direction.NORTH) { maxX = endU; minX = startU; maxY = v + 1; minY = v; }
+        switch (dir.getAxis()) {
+            case Y -> emit(u0, plane, v0, u1, plane, v1, dir, block, u1 - u0, v1 - v0);
+            case X -> emit(plane, u0, v0, plane, u1, v1, dir, block, v1 - v0, u1 - u0);
+            case Z -> emit(u0, v0, plane, u1, v1, plane, dir, block, u1 - u0, v1 - v0);
+        }
+    }
 
-        minX -= c.getMinX(); maxX -= c.getMinX();
-        minY -= c.getMinY(); maxY -= c.getMinY();
-        minZ -= c.getMinZ(); maxZ -= c.getMinZ();
+    private void emit(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Direction face, int block, int width, int length) throws IOException {
+        if (buffer.count == QuadBuffer.CAPACITY) flushQuads();
+        int i = buffer.count++;
+        double[] b = buffer.box;
+        b[i * 6] = minX; b[i * 6 + 1] = minY; b[i * 6 + 2] = minZ;
+        b[i * 6 + 3] = maxX; b[i * 6 + 4] = maxY; b[i * 6 + 5] = maxZ;
+        buffer.faces[i] = (byte) face.ordinal();
+        buffer.blocks[i] = block;
+        buffer.widths[i] = width;
+        buffer.lengths[i] = length;
+    }
 
-        result.add(new MergedQuad(minX, minY, minZ, maxX, maxY, maxZ, dir, state, length, 1));
+    private void flushQuads() throws IOException {
+        if (buffer.count == 0) return;
+        sink.accept(buffer);
+        quadCount += buffer.count;
+        buffer.count = 0;
     }
 
     private boolean isPlantOrFlat(BlockState s) {
@@ -311,216 +373,451 @@ public class OptimizedExporter {
     }
 
     // --- WRITERS ---
+    // Every sink is opened before meshing, so anything it needs up front (atlas tiles, 3MF palette)
+    // comes from the snapshot palette, plus the FILLER stone of solidify and the micro-connectors.
+
+    private QuadSink openSink(File baseFile, String mode, float scale) throws IOException {
+        if (mode.equals(MODE_STL)) return new StlSink(baseFile, scale);
+        if (mode.equals(MODE_GLB)) return new GlbSink(baseFile, scale);
+        if (mode.equals(MODE_3MF)) return new ThreeMfSink(baseFile, scale);
+        return new ObjSink(baseFile, mode, scale);
+    }
+
+    private class StlSink implements QuadSink {
+        private final StlWriter writer; // Streaming writer: the triangle count is patched into the header on close
+        private final float scale;
+
+        StlSink(File file, float scale) throws IOException {
+            this.writer = new StlWriter(file, gzip);
+            this.scale = scale;
+        }
+
+        @Override
+        public void accept(QuadBuffer quads) throws IOException {
+            for (int i = 0; i < quads.count; i++) writeQuadToStl(writer, quads, i, scale);
+        }
 
-    private void writeBinaryStl(List<MergedQuad> quads, File file) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(new byte[80]); // 80-byte header
-            ByteBuffer countBuf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-            fos.write(countBuf.putInt(quads.size() * 2).array()); // *2 because 1 quad = 2 triangles
-            ByteBuffer buf = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
-            for (MergedQuad q : quads) writeQuadToStl(fos, buf, q);
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        @Override
+        public void abort() {
+            writer.abort();
         }
     }
 
-    private void writeQuadToStl(FileOutputStream fos, ByteBuffer buf, MergedQuad q) throws IOException {
-        float nx = q.face.getOffsetX(); float ny = q.face.getOffsetY(); float nz = q.face.getOffsetZ();
+    private void writeQuadToStl(StlWriter writer, QuadBuffer q, int i, float scale) throws IOException {
+        Direction face = q.face(i);
+        double[] b = q.box;
+        float minX = (float) b[i * 6], minY = (float) b[i * 6 + 1], minZ = (float) b[i * 6 + 2];
+        float maxX = (float) b[i * 6 + 3], maxY = (float) b[i * 6 + 4], maxZ = (float) b[i * 6 + 5];
+
+        float nx = face.getOffsetX(); float ny = face.getOffsetY(); float nz = face.getOffsetZ();
         float x1,y1,z1, x2,y2,z2, x3,y3,z3, x4,y4,z4;
 
         // Define corners based on axis
-        if (q.face.getAxis() == Direction.Axis.Y) {
-            x1 = (float)q.minX; z1 = (float)q.minZ; x2 = (float)q.maxX; z2 = (float)q.minZ;
-            x3 = (float)q.maxX; z3 = (float)q.maxZ; x4 = (float)q.minX; z4 = (float)q.maxZ;
-            y1=y2=y3=y4 = (float)q.minY;
-        } else if (q.face.getAxis() == Direction.Axis.Z) {
-            x1 = (float)q.minX; y1 = (float)q.minY; x2 = (float)q.maxX; y2 = (float)q.minY;
-            x3 = (float)q.maxX; y3 = (float)q.maxY; x4 = (float)q.minX; y4 = (float)q.maxY;
-            z1=z2=z3=z4 = (float)q.minZ;
+        if (face.getAxis() == Direction.Axis.Y) {
+            x1 = minX; z1 = minZ; x2 = maxX; z2 = minZ;
+            x3 = maxX; z3 = maxZ; x4 = minX; z4 = maxZ;
+            y1=y2=y3=y4 = minY;
+        } else if (face.getAxis() == Direction.Axis.Z) {
+            x1 = minX; y1 = minY; x2 = maxX; y2 = minY;
+            x3 = maxX; y3 = maxY; x4 = minX; y4 = maxY;
+            z1=z2=z3=z4 = minZ;
         } else {
-            z1 = (float)q.minZ; y1 = (float)q.minY; z2 = (float)q.maxZ; y2 = (float)q.minY;
-            z3 = (float)q.maxZ; y3 = (float)q.maxY; z4 = (float)q.minZ; y4 = (float)q.maxY;
-            x1=x2=x3=x4 = (float)q.minX;
+            z1 = minZ; y1 = minY; z2 = maxZ; y2 = minY;
+            z3 = maxZ; y3 = maxY; z4 = minZ; y4 = maxY;
+            x1=x2=x3=x4 = minX;
         }
 
+        x1 *= scale; y1 *= scale; z1 *= scale; x2 *= scale; y2 *= scale; z2 *= scale;
+        x3 *= scale; y3 *= scale; z3 *= scale; x4 *= scale; y4 *= scale; z4 *= scale;
+
         // Write two triangles
-        writeTriangle(fos, buf, x1,y1,z1, x2,y2,z2, x3,y3,z3, nx,ny,nz);
-        writeTriangle(fos, buf, x1,y1,z1, x3,y3,z3, x4,y4,z4, nx,ny,nz);
+        writer.writeQuad(nx,ny,nz, x1,y1,z1, x2,y2,z2, x3,y3,z3, x4,y4,z4);
     }
 
-    private void writeTriangle(FileOutputStream fos, ByteBuffer buf, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float nx, float ny, float nz) throws IOException {
-        buf.clear();
-        buf.putFloat(nx); buf.putFloat(ny); buf.putFloat(nz);
-        buf.putFloat(x1); buf.putFloat(y1); buf.putFloat(z1);
-        buf.putFloat(x2); buf.putFloat(y2); buf.putFloat(z2);
-        buf.putFloat(x3); buf.putFloat(y3); buf.putFloat(z3);
-        buf.putShort((short) 0); // Attribute byte count
-        fos.write(buf.array());
-    }
+    private class ObjSink implements QuadSink {
+        private final String mode;
+        private final float scale;
+        private final File texDir;
+        private final String texDirName;
+        private final BufferedWriter mtl;
+        private final Set<String> materials = new HashSet<>();
+        private final double[] c = new double[12];
+
+        // Texture atlas: one PNG and one material. A tile can't repeat inside the atlas,
+        // so merged quads are cut back into block-sized cells.
+        private TextureAtlas textureAtlas;
+        private int[] tiles;
+        private int fillerTile;
+
+        // Exactly one of the two is used
+        private IndexedObjWriter indexedWriter;
+        private ObjLineEncoder flatWriter;
+
+        ObjSink(File baseFile, String mode, float scale) throws IOException {
+            this.mode = mode;
+            this.scale = scale;
+            File objFile = new File(baseFile.getParent(), baseFile.getName() + ".obj");
+            File mtlFile = new File(baseFile.getParent(), baseFile.getName() + ".mtl");
+            texDirName = baseFile.getName() + "_textures";
+            texDir = new File(baseFile.getParent(), texDirName);
+
+            if (mode.equals(MODE_OBJ_TEXTURE) && atlas) {
+                textureAtlas = new TextureAtlas(sprites);
+                tiles = new int[snapshot.getPaletteSize()];
+                for (int block = 1; block < snapshot.getPaletteSize(); block++) {
+                    tiles[block] = textureAtlas.add(stateOf(block), tintOf(block), mapColorOf(block));
+                }
+                fillerTile = textureAtlas.add(stateOf(FILLER), tintOf(FILLER), mapColorOf(FILLER));
+                textureAtlas.build(new File(baseFile.getParent(), baseFile.getName() + "_atlas.png"));
+            } else if (mode.equals(MODE_OBJ_TEXTURE) && !texDir.exists()) {
+                texDir.mkdirs();
+            }
+
+            mtl = new BufferedWriter(new FileWriter(mtlFile));
+            try {
+                if (textureAtlas != null) writeAtlasMaterial(mtl, baseFile);
+
+                if (indexed && IndexedObjWriter.fits(snapshot)) {
+                    indexedWriter = new IndexedObjWriter(GzipOutput.open(objFile, gzip), mtlFile.getName(), scale);
+                } else {
+                    flatWriter = new ObjLineEncoder(GzipOutput.open(objFile, gzip));
+                    flatWriter.text("mtllib ");
+                    flatWriter.text(mtlFile.getName());
+                    flatWriter.endLine();
+                }
+            } catch (IOException | RuntimeException e) {
+                // The sink never reaches the caller, so nothing else would close what it opened
+                try {
+                    if (flatWriter != null) flatWriter.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+                try {
+                    mtl.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+                throw e;
+            }
+        }
 
-    private void writeObj(List<MergedQuad> quads, File baseFile, String mode, World world) throws IOException {
-        File objFile = new File(baseFile.getParent(), baseFile.getName() + ".obj");
-        File mtlFile = new File(baseFile.getParent(), baseFile.getName() + ".mtl");
-        File texDir = new File(baseFile.getParent(), baseFile.getName() + "_textures");
+        @Override
+        public void accept(QuadBuffer quads) throws IOException {
+            double[] b = quads.box;
+            for (int i = 0; i < quads.count; i++) {
+                Direction face = quads.face(i);
+                int o = i * 6;
+                if (textureAtlas == null) {
+                    writeQuad(face, b[o], b[o + 1], b[o + 2], b[o + 3], b[o + 4], b[o + 5], quads.blocks[i], quads.widths[i], quads.lengths[i]);
+                } else {
+                    writeCells(face, b[o], b[o + 1], b[o + 2], b[o + 3], b[o + 4], b[o + 5], quads.blocks[i]);
+                }
+            }
+        }
 
-        if (mode.equals(MODE_OBJ_TEXTURE) && !texDir.exists()) texDir.mkdirs();
+        // Cuts the quad into block-sized cells along its two in-plane axes (smaller quads stay whole)
+        private void writeCells(Direction face, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int block) throws IOException {
+            int nx = face.getAxis() == Direction.Axis.X ? 1 : Math.max(1, (int) Math.round(maxX - minX));
+            int ny = face.getAxis() == Direction.Axis.Y ? 1 : Math.max(1, (int) Math.round(maxY - minY));
+            int nz = face.getAxis() == Direction.Axis.Z ? 1 : Math.max(1, (int) Math.round(maxZ - minZ));
+            if (nx * ny * nz == 1) {
+                writeQuad(face, minX, minY, minZ, maxX, maxY, maxZ, block, 1, 1);
+                return;
+            }
+            double sx = (maxX - minX) / nx, sy = (maxY - minY) / ny, sz = (maxZ - minZ) / nz;
+            for (int i = 0; i < nx; i++) {
+                for (int j = 0; j < ny; j++) {
+                    for (int k = 0; k < nz; k++) {
+                        double x1 = minX + sx * i, y1 = minY + sy * j, z1 = minZ + sz * k;
+                        writeQuad(face, x1, y1, z1,
+                                nx == 1 ? maxX : x1 + sx, ny == 1 ? maxY : y1 + sy, nz == 1 ? maxZ : z1 + sz,
+                                block, 1, 1);
+                    }
+                }
+            }
+        }
 
-        Set<String> materials = new HashSet<>();
-        int vertexOffset = 1; // OBJ indices start at 1
+        private void writeQuad(Direction face, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                               int block, int width, int length) throws IOException {
+            String matName = textureAtlas != null ? TextureAtlas.MATERIAL : getMaterialName(block, mode);
 
-        try (BufferedWriter w = new BufferedWriter(new FileWriter(objFile));
-             BufferedWriter mtl = new BufferedWriter(new FileWriter(mtlFile))) {
+            if (textureAtlas == null && !materials.contains(matName)) {
+                writeMaterial(mtl, matName, block, mode, texDir, texDirName);
+                materials.add(matName);
+            }
 
-            w.write("mtllib " + mtlFile.getName() + "\n");
+            quadCorners(face, minX, minY, minZ, maxX, maxY, maxZ, c);
+            int tile = textureAtlas != null ? (block == FILLER ? fillerTile : tiles[block]) : 0;
+
+            if (indexedWriter != null) {
+                IndexedObjWriter w = indexedWriter;
+                int v1 = w.vertex(c[0], c[1], c[2]);
+                int v2 = w.vertex(c[3], c[4], c[5]);
+                int v3 = w.vertex(c[6], c[7], c[8]);
+                int v4 = w.vertex(c[9], c[10], c[11]);
+
+                if (textureAtlas != null) {
+                    w.quad(matName, normalIndex(face), v1, v2, v3, v4,
+                            w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 0)),
+                            w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 0)),
+                            w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 1)),
+                            w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 1)));
+                } else if (mode.equals(MODE_OBJ_TEXTURE)) {
+                    // Tiled texture: UVs run up to the merged size
+                    w.quad(matName, normalIndex(face), v1, v2, v3, v4,
+                            IndexedObjWriter.UV_00, w.texCoord(width, 0), w.texCoord(width, length), w.texCoord(0, length));
+                } else {
+                    w.quad(matName, normalIndex(face), v1, v2, v3, v4);
+                }
+                return;
+            }
 
-            for (MergedQuad q : quads) {
-                String matName = getMaterialName(q.state, world, q.face, mode);
+            ObjLineEncoder w = flatWriter;
+
+            // 4 vertices
+            w.vertex(c[0]*scale, c[1]*scale, c[2]*scale);
+            w.vertex(c[3]*scale, c[4]*scale, c[5]*scale);
+            w.vertex(c[6]*scale, c[7]*scale, c[8]*scale);
+            w.vertex(c[9]*scale, c[10]*scale, c[11]*scale);
+
+            // UV Mapping
+            if (textureAtlas != null) {
+                w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 0));
+                w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 0));
+                w.texCoord(textureAtlas.u(tile, 1), textureAtlas.v(tile, 1));
+                w.texCoord(textureAtlas.u(tile, 0), textureAtlas.v(tile, 1));
+            } else {
+                float uScale = mode.equals(MODE_OBJ_TEXTURE) ? width : 1.0f;
+                float vScale = mode.equals(MODE_OBJ_TEXTURE) ? length : 1.0f;
+
+                w.text("vt 0.0 0.0\n");
+                w.text("vt "); w.decimal(uScale); w.text(" 0.0\n");
+                w.texCoord(uScale, vScale);
+                w.text("vt 0.0 "); w.decimal(vScale); w.endLine();
+            }
 
-                if (!materials.contains(matName)) {
-                    writeMaterial(mtl, matName, q.state, world, mode, texDir, baseFile.getName() + "_textures");
-                    materials.add(matName);
+            w.normal(face.getOffsetX(), face.getOffsetY(), face.getOffsetZ());
+
+            w.useMaterial(matName);
+
+            // Face indices (v/vt/vn)
+            // -4 is the 4th vertex from the end, etc.
+            // Using negative indices is cleaner when writing linearly
+            w.text("f -4/-4/-1 -3/-3/-1 -2/-2/-1 -1/-1/-1\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (BufferedWriter m = mtl) {
+                if (indexedWriter != null) {
+                    indexedWriter.close();
+                    System.out.println("Indexed OBJ: " + indexedWriter.getVertexCount() + " shared vertices");
+                } else {
+                    flatWriter.close();
                 }
+            }
+        }
 
-                writeObjVertex(w, q); // Writes 4 vertices
+        @Override
+        public void abort() throws IOException {
+            try (BufferedWriter m = mtl) {
+                if (indexedWriter != null) indexedWriter.abort();
+                else flatWriter.abort();
+            }
+        }
+    }
 
-                // UV Mapping
-                float uScale = mode.equals(MODE_OBJ_TEXTURE) ? q.width : 1.0f;
-                float vScale = mode.equals(MODE_OBJ_TEXTURE) ? q.length : 1.0f;
+    private void writeAtlasMaterial(BufferedWriter mtl, File baseFile) throws IOException {
+        mtl.write("newmtl " + TextureAtlas.MATERIAL + "\n");
+        mtl.write("Kd 1.0 1.0 1.0\n");
+        mtl.write("map_Kd " + baseFile.getName() + "_atlas.png\n\n");
+    }
 
-                w.write(String.format(Locale.US, "vt 0.0 0.0\n"));
-                w.write(String.format(Locale.US, "vt %f 0.0\n", uScale));
-                w.write(String.format(Locale.US, "vt %f %f\n", uScale, vScale));
-                w.write(String.format(Locale.US, "vt 0.0 %f\n", vScale));
+    private class GlbSink implements QuadSink {
+        private final GlbWriter writer;
+        private final Map<Integer, Integer> materials = new HashMap<>();
+        private final double[] c = new double[12];
+        private final float[] uvs = new float[8];
 
-                w.write(String.format(Locale.US, "vn %d %d %d\n", q.face.getOffsetX(), q.face.getOffsetY(), q.face.getOffsetZ()));
+        GlbSink(File file, float scale) {
+            this.writer = new GlbWriter(file, scale);
+        }
 
-                w.write("usemtl " + matName + "\n");
+        @Override
+        public void accept(QuadBuffer quads) {
+            for (int i = 0; i < quads.count; i++) {
+                int block = quads.blocks[i];
+                Integer material = materials.get(block);
+                if (material == null) {
+                    material = registerGlbMaterial(writer, block);
+                    materials.put(block, material);
+                }
 
-                // Face indices (v/vt/vn)
-                // -4 is the 4th vertex from the end, etc.
-                // Using negative indices is cleaner when writing linearly
-                w.write("f -4/-4/-1 -3/-3/-1 -2/-2/-1 -1/-1/-1\n");
+                quadCorners(quads, i, c);
+                // Texture tiled over the merged size (glTF has v pointing down)
+                int width = quads.widths[i];
+                int length = quads.lengths[i];
+                uvs[0] = 0;     uvs[1] = length;
+                uvs[2] = width; uvs[3] = length;
+                uvs[4] = width; uvs[5] = 0;
+                uvs[6] = 0;     uvs[7] = 0;
+                Direction face = quads.face(i);
+                writer.quad(material, face.getOffsetX(), face.getOffsetY(), face.getOffsetZ(), c, uvs);
             }
         }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        @Override
+        public void abort() {
+            writer.abort();
+        }
     }
 
-    private void writeObjVertex(BufferedWriter w, MergedQuad q) throws IOException {
+    private int registerGlbMaterial(GlbWriter writer, int block) {
+        String name = getMaterialName(block, MODE_GLB);
+        int existing = writer.getMaterial(name);
+        if (existing != -1) return existing;
+
+        Sprite s = BlockTextures.getSprite(stateOf(block));
+        if (s != null) return writer.addTextureMaterial(name, sprites.png(s, tintOf(block)), mapColorOf(block));
+        return writer.addColorMaterial(name, mapColorOf(block));
+    }
+
+    private class ThreeMfSink implements QuadSink {
+        private final ThreeMfWriter writer;
+        private final int[] materials; // Palette index -> 3MF material
+        private final int fillerMaterial;
+        private final double[] c = new double[12];
+
+        ThreeMfSink(File file, float scale) throws IOException {
+            // Palette: distinct map colors, named after the first block using them
+            Map<Integer, Integer> colorIndex = new LinkedHashMap<>();
+            List<String> names = new ArrayList<>();
+            materials = new int[snapshot.getPaletteSize()];
+            for (int block = 1; block < snapshot.getPaletteSize(); block++) {
+                materials[block] = colorOf(block, colorIndex, names);
+            }
+            fillerMaterial = colorOf(FILLER, colorIndex, names);
+            int[] colors = colorIndex.keySet().stream().mapToInt(Integer::intValue).toArray();
+
+            writer = new ThreeMfWriter(file, scale, snapshot.getSizeZ(), names.toArray(new String[0]), colors);
+        }
+
+        private int colorOf(int block, Map<Integer, Integer> colorIndex, List<String> names) {
+            int color = mapColorOf(block);
+            Integer index = colorIndex.get(color);
+            if (index == null) {
+                index = colorIndex.size();
+                colorIndex.put(color, index);
+                names.add(Registries.BLOCK.getId(stateOf(block).getBlock()).getPath());
+            }
+            return index;
+        }
+
+        @Override
+        public void accept(QuadBuffer quads) throws IOException {
+            for (int i = 0; i < quads.count; i++) {
+                int block = quads.blocks[i];
+                quadCorners(quads, i, c);
+                writer.quad(block == FILLER ? fillerMaterial : materials[block], c);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        @Override
+        public void abort() {
+            writer.abort();
+        }
+    }
+
+    private static int normalIndex(Direction face) {
+        return switch (face) {
+            case DOWN -> IndexedObjWriter.NORMAL_DOWN;
+            case UP -> IndexedObjWriter.NORMAL_UP;
+            case SOUTH -> IndexedObjWriter.NORMAL_SOUTH;
+            case NORTH -> IndexedObjWriter.NORMAL_NORTH;
+            case WEST -> IndexedObjWriter.NORMAL_WEST;
+            case EAST -> IndexedObjWriter.NORMAL_EAST;
+        };
+    }
+
+    // The 4 corners of the quad (x,y,z each, block units), counter-clockwise for proper normal direction in OBJ
+    private static void quadCorners(Direction face, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] c) {
         double x1,y1,z1, x2,y2,z2, x3,y3,z3, x4,y4,z4;
 
-        // Define vertices counter-clockwise for proper normal direction in OBJ
-        if (q.face.getAxis() == Direction.Axis.Y) {
-            y1=y2=y3=y4 = q.minY;
-            if (q.face == Direction.UP) { x1=q.minX; z1=q.maxZ;  x2=q.maxX; z2=q.maxZ; x3=q.maxX; z3=q.minZ; x4=q.minX; z4=q.minZ; }
-            else { x1=q.minX; z1=q.minZ;  x2=q.maxX; z2=q.minZ; x3=q.maxX; z3=q.maxZ; x4=q.minX; z4=q.maxZ; }
-        } else if (q.face.getAxis() == Direction.Axis.Z) {
-            z1=z2=z3=z4 = q.minZ;
-            if (q.face == Direction.SOUTH) { x1=q.minX; y1=q.minY; x2=q.maxX; y2=q.minY; x3=q.maxX; y3=q.maxY; x4=q.minX; y4=q.maxY; }
-            else { x1=q.maxX; y1=q.minY; x2=q.minX; y2=q.minY; x3=q.minX; y3=q.maxY; x4=q.maxX; y4=q.maxY; }
+        if (face.getAxis() == Direction.Axis.Y) {
+            y1=y2=y3=y4 = minY;
+            if (face == Direction.UP) { x1=minX; z1=maxZ;  x2=maxX; z2=maxZ; x3=maxX; z3=minZ; x4=minX; z4=minZ; }
+            else { x1=minX; z1=minZ;  x2=maxX; z2=minZ; x3=maxX; z3=maxZ; x4=minX; z4=maxZ; }
+        } else if (face.getAxis() == Direction.Axis.Z) {
+            z1=z2=z3=z4 = minZ;
+            if (face == Direction.SOUTH) { x1=minX; y1=minY; x2=maxX; y2=minY; x3=maxX; y3=maxY; x4=minX; y4=maxY; }
+            else { x1=maxX; y1=minY; x2=minX; y2=minY; x3=minX; y3=maxY; x4=maxX; y4=maxY; }
         } else {
-            x1=x2=x3=x4 = q.minX;
-            if (q.face == Direction.EAST) { z1=q.maxZ; y1=q.minY; z2=q.minZ; y2=q.minY; z3=q.minZ; y3=q.maxY; z4=q.maxZ; y4=q.maxY; }
-            else { z1=q.minZ; y1=q.minY; z2=q.maxZ; y2=q.minY; z3=q.maxZ; y3=q.maxY; z4=q.minZ; y4=q.maxY; }
+            x1=x2=x3=x4 = minX;
+            if (face == Direction.EAST) { z1=maxZ; y1=minY; z2=minZ; y2=minY; z3=minZ; y3=maxY; z4=maxZ; y4=maxY; }
+            else { z1=minZ; y1=minY; z2=maxZ; y2=minY; z3=maxZ; y3=maxY; z4=minZ; y4=maxY; }
         }
 
-        w.write(String.format(Locale.US, "v %f %f %f\n", x1,y1,z1));
-        w.write(String.format(Locale.US, "v %f %f %f\n", x2,y2,z2));
-        w.write(String.format(Locale.US, "v %f %f %f\n", x3,y3,z3));
-        w.write(String.format(Locale.US, "v %f %f %f\n", x4,y4,z4));
+        c[0] = x1; c[1] = y1; c[2] = z1;
+        c[3] = x2; c[4] = y2; c[5] = z2;
+        c[6] = x3; c[7] = y3; c[8] = z3;
+        c[9] = x4; c[10] = y4; c[11] = z4;
     }
 
-    private String getMaterialName(BlockState state, World world, Direction face, String mode) {
-        String name = "mat_" + Registries.BLOCK.getId(state.getBlock()).getPath();
-        if (mode.equals(MODE_OBJ_TEXTURE)) {
-            int color = -1;
-            try { color = MinecraftClient.getInstance().getBlockColors().getColor(state, world, null, 0); } catch(Exception e){}
+    private static void quadCorners(QuadBuffer q, int i, double[] c) {
+        double[] b = q.box;
+        quadCorners(q.face(i), b[i * 6], b[i * 6 + 1], b[i * 6 + 2], b[i * 6 + 3], b[i * 6 + 4], b[i * 6 + 5], c);
+    }
+
+    private static boolean isTextured(String mode) {
+        return mode.equals(MODE_OBJ_TEXTURE) || mode.equals(MODE_GLB);
+    }
+
+    private String getMaterialName(int block, String mode) {
+        String name = "mat_" + Registries.BLOCK.getId(stateOf(block).getBlock()).getPath();
+        if (isTextured(mode)) {
+            int color = tintOf(block);
             if (color != -1) name += "_" + Integer.toHexString(color);
         }
         return name;
     }
 
-    private void writeMaterial(BufferedWriter mtl, String name, BlockState state, World world, String mode, File texDir, String dirName) throws IOException {
+    private void writeMaterial(BufferedWriter mtl, String name, int block, String mode, File texDir, String dirName) throws IOException {
+        BlockState state = stateOf(block);
         mtl.write("newmtl " + name + "\n");
         if (mode.equals(MODE_OBJ_COLOR)) {
-            int c = state.getMapColor(world, null).color;
+            int c = mapColorOf(block);
             float r = ((c >> 16) & 0xFF) / 255f; float g = ((c >> 8) & 0xFF) / 255f; float b = (c & 0xFF) / 255f;
             mtl.write(String.format(Locale.US, "Kd %f %f %f\n", r, g, b));
         } else {
             mtl.write("Kd 1.0 1.0 1.0\n");
             try {
-                // Using 'var' to handle potential mapping differences for BakedModel
-                var model = MinecraftClient.getInstance().getBlockRenderManager().getModel(state);
-                Sprite s = model.particleSprite();
+                Sprite s = BlockTextures.getSprite(state);
 
                 if (s != null) {
-                    String texName = s.getContents().getId().getPath().replace("/", "_") + ".png";
-
-                    // Call the helper method to save texture
-                    // Note: Passing -1 for tint color if we want raw texture, or the computed color if needed
-                    // For simplicity in optimized mode, we often skip tinting or do it simply.
-                    // Here we pass 0 or a color if retrieved.
-                    int tint = -1;
-                    try { tint = MinecraftClient.getInstance().getBlockColors().getColor(state, world, null, 0); } catch(Exception e){}
+                    // Tint was resolved when the snapshot was captured (-1 = untinted)
+                    int tint = tintOf(block);
+                    String texName = BlockTextures.textureName(s, tint) + ".png";
 
-                    saveSprite(s, new File(texDir, texName), tint);
+                    sprites.savePng(s, tint, new File(texDir, texName));
                     mtl.write("map_Kd " + dirName + "/" + texName + "\n");
                 }
             } catch(Exception e) {}
         }
         mtl.write("\n");
     }
-
-    private void saveSprite(Sprite sprite, File outputFile, int tintColor) {
-        if (outputFile.exists()) return;
-
-        try {
-            Identifier spriteId = sprite.getContents().getId();
-            Identifier resourceLocation = Identifier.of(
-                    spriteId.getNamespace(),
-                    "textures/" + spriteId.getPath() + ".png"
-            );
-
-            var resource = MinecraftClient.getInstance().getResourceManager().getResource(resourceLocation);
-
-            if (resource.isPresent()) {
-                try (java.io.InputStream inputStream = resource.get().getInputStream()) {
-                    NativeImage originalImage = NativeImage.read(inputStream);
-
-                    if (tintColor != -1) {
-                        int w = originalImage.getWidth();
-                        int h = originalImage.getHeight();
-
-                        try (NativeImage tintedImage = new NativeImage(w, h, true)) {
-                            int tintR = (tintColor >> 16) & 0xFF;
-                            int tintG = (tintColor >> 8) & 0xFF;
-                            int tintB = (tintColor) & 0xFF;
-
-                            for (int x = 0; x < w; x++) {
-                                for (int y = 0; y < h; y++) {
-                                    int pixelColor = originalImage.getColorArgb(x, y);
-
-                                    int alpha = (pixelColor >> 24) & 0xFF;
-                                    int red = (pixelColor >> 16) & 0xFF;
-                                    int green = (pixelColor >> 8) & 0xFF;
-                                    int blue = (pixelColor) & 0xFF;
-
-                                    if (alpha > 0) {
-                                        int newR = (red * tintR) / 255;
-                                        int newG = (green * tintG) / 255;
-                                        int newB = (blue * tintB) / 255;
-                                        int newPixel = (alpha << 24) | (newR << 16) | (newG << 8) | newB;
-                                        tintedImage.setColorArgb(x, y, newPixel);
-                                    } else {
-                                        tintedImage.setColorArgb(x, y, 0);
-                                    }
-                                }
-                            }
-                            tintedImage.writeTo(outputFile.toPath());
-                        }
-                    } else {
-                        originalImage.writeTo(outputFile.toPath());
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error saving texture: " + outputFile.getName());
-        }
-    }
-}
\ No newline at end of file
+}
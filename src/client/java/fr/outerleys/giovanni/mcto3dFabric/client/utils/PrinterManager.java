@@ -18,13 +18,11 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import net.minecraft.util.math.BlockPos;
 
-import java.util.*;
-
 public class PrinterManager {
 
     private static boolean printing = false;
-    private static List<Map.Entry<BlockPos, BlockState>> printQueue = new ArrayList<>();
-    private static int currentIndex = 0;
+    private static VoxelVolume.Cursor printCursor = null; // Parcourt le modèle couche par couche (Y -> X -> Z)
+    private static int printTotal = 0;
     private static BlockPos originPos;
     private static int rotationSteps;
 
@@ -33,24 +31,17 @@ public class PrinterManager {
     private static float delayMs = 50;
     private static float timeAccumulator = 0;
 
-    public static void startPrint(Map<BlockPos, BlockState> voxels, BlockPos origin, int rotation, float speedMs) {
+    public static void startPrint(VoxelVolume voxels, BlockPos origin, int rotation, float speedMs) {
         if (voxels == null || voxels.isEmpty()) return;
 
-        // 1. COPIE ET TRI (Y -> X -> Z)
-        printQueue = new ArrayList<>(voxels.entrySet());
-        printQueue.sort((e1, e2) -> {
-            int dy = Integer.compare(e1.getKey().getY(), e2.getKey().getY());
-            if (dy != 0) return dy;
-            int dx = Integer.compare(e1.getKey().getX(), e2.getKey().getX());
-            if (dx != 0) return dx;
-            return Integer.compare(e1.getKey().getZ(), e2.getKey().getZ());
-        });
+        // 1. PARCOURS (Y -> X -> Z) : le volume est déjà rangé par couches, pas de copie ni de tri
+        printCursor = voxels.cursor();
+        printTotal = voxels.size();
 
         // 2. CONFIGURATION
         originPos = origin;
         rotationSteps = rotation;
         delayMs = speedMs;
-        currentIndex = 0;
         printing = true;
         lastTime = System.currentTimeMillis();
         timeAccumulator = 0;
@@ -59,7 +50,7 @@ public class PrinterManager {
         // On désactive l'affichage "fantôme" pour ne voir que les vrais blocs se poser
         ImportManager.isActive = false;
 
-        System.out.println("Impression 3D démarrée : " + printQueue.size() + " blocs.");
+        System.out.println("Impression 3D démarrée : " + printTotal + " blocs.");
     }
 
     public static void tick(MinecraftClient client) {
@@ -73,15 +64,13 @@ public class PrinterManager {
 
         // Boucle pour rattraper le temps (permet de poser plusieurs blocs par tick si delayMs est petit)
         while (timeAccumulator >= delayMs) {
-            if (currentIndex >= printQueue.size()) {
+            if (!printCursor.next()) {
                 finish(client);
                 return;
             }
 
-            Map.Entry<BlockPos, BlockState> entry = printQueue.get(currentIndex);
-            placeBlock(entry.getKey(), entry.getValue());
+            placeBlock(new BlockPos(printCursor.x(), printCursor.y(), printCursor.z()), printCursor.state());
 
-            currentIndex++;
             timeAccumulator -= delayMs;
         }
     }
@@ -117,7 +106,7 @@ public class PrinterManager {
 
     public static void stop() {
         printing = false;
-        printQueue.clear();
+        printCursor = null;
         ImportManager.isActive = false; // Sécurité si on stop manuellement
     }
 }
\ No newline at end of file
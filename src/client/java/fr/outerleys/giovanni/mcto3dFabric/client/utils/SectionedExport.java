@@ -0,0 +1,110 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Splits a snapshot into sections, meshes them on the ExportPool and hands the results back IN SECTION ORDER.
+// Sections follow the legacy loop order (x, then y, then z), so stitching them gives the same file
+// as the old single-threaded exporters, and the same bytes whether it runs in parallel or not.
+public class SectionedExport {
+
+    // Largest section, in blocks: bounds the memory of the meshes in flight on huge selections
+    private static final int MAX_SECTION_BLOCKS = 1 << 18;
+
+    // Inclusive bounds, relative to the snapshot min corner
+    public record Section(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {}
+
+    @FunctionalInterface
+    public interface SectionSink<T> {
+        void accept(Section section, T result) throws IOException;
+    }
+
+    /**
+     * Order: chunk-aligned X slabs (full Y and Z), lowest X first. A slab larger than MAX_SECTION_BLOCKS is cut
+     * into single X layers, and a layer still too large into Y bands (full Z). Every cut keeps the x -> y -> z order.
+     */
+    public static List<Section> split(VoxelSnapshot s) {
+        List<Section> sections = new ArrayList<>();
+        int sizeY = s.getSizeY(), sizeZ = s.getSizeZ();
+        long layer = (long) sizeY * sizeZ;
+
+        for (int x0 = 0; x0 < s.getSizeX(); ) {
+            int x1 = sectionEnd(s.getOriginX(), x0, s.getSizeX());
+            if (layer * (x1 - x0 + 1) <= MAX_SECTION_BLOCKS) {
+                sections.add(new Section(x0, 0, 0, x1, sizeY - 1, sizeZ - 1));
+            } else {
+                int bandHeight = (int) Math.max(1, Math.min(sizeY, MAX_SECTION_BLOCKS / Math.max(1, sizeZ)));
+                for (int x = x0; x <= x1; x++) {
+                    for (int y0 = 0; y0 < sizeY; y0 += bandHeight) {
+                        sections.add(new Section(x, y0, 0, x, Math.min(sizeY, y0 + bandHeight) - 1, sizeZ - 1));
+                    }
+                }
+            }
+            x0 = x1 + 1;
+        }
+        return sections;
+    }
+
+    // Last relative coordinate before the next world multiple of 16
+    private static int sectionEnd(int origin, int start, int size) {
+        int world = origin + start;
+        return Math.min(size - 1, ((world >> 4) + 1) * 16 - 1 - origin);
+    }
+
+    /**
+     * Meshes every section and feeds the results to {@code sink} in order, on the calling thread.
+     * In parallel mode only a bounded window of sections is in flight, so finished buffers
+     * never pile up faster than the sink can write them.
+     */
+    public static <T> void forEachOrdered(List<Section> sections, boolean parallel, Function<Section, T> mesher,
+                                          SectionSink<T> sink, Consumer<Float> progressCallback) throws IOException {
+        int total = sections.size();
+
+        if (!parallel) {
+            for (int i = 0; i < total; i++) {
+                progressCallback.accept((float) i / total);
+                sink.accept(sections.get(i), mesher.apply(sections.get(i)));
+            }
+            progressCallback.accept(1.0f);
+            return;
+        }
+
+        ForkJoinPool pool = ExportPool.get();
+        int window = pool.getParallelism() * 4;
+        ArrayDeque<ForkJoinTask<T>> inFlight = new ArrayDeque<>();
+        int next = 0;
+
+        try {
+            for (int i = 0; i < total; i++) {
+                while (next < total && inFlight.size() < window) {
+                    Section section = sections.get(next++);
+                    inFlight.add(pool.submit(() -> mesher.apply(section)));
+                }
+
+                progressCallback.accept((float) i / total);
+                T result = inFlight.poll().join();
+                sink.accept(sections.get(i), result);
+            }
+        } finally {
+            // Only non-empty on error
+            for (ForkJoinTask<T> task : inFlight) task.cancel(true);
+        }
+        progressCallback.accept(1.0f);
+    }
+}
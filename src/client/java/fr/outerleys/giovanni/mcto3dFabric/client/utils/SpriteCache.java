@@ -0,0 +1,86 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.util.Identifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Texture work of one export, done on the export pool while the meshing goes on:
+// every sprite is decoded once, every (sprite, tint) is tinted once over the int array,
+// and PNGs are encoded in parallel. Callers only get futures, the block loop never waits on an image.
+// One instance per export (a resource pack reload between two exports must be picked up).
+public class SpriteCache {
+
+    private final Map<Identifier, CompletableFuture<BlockTextures.Pixels>> decoded = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<BlockTextures.Pixels>> tinted = new ConcurrentHashMap<>();
+    private final Map<Path, CompletableFuture<Void>> files = new ConcurrentHashMap<>(); // One write per PNG path
+
+    // Starts decoding + tinting every (sprite, tint) of the palette, so it overlaps the meshing
+    public void prefetch(VoxelSnapshot snapshot) {
+        for (int block = 0; block < snapshot.getPaletteSize(); block++) {
+            if (block == VoxelSnapshot.AIR) continue;
+            Sprite sprite = BlockTextures.getSprite(snapshot.getState(block));
+            if (sprite != null) pixels(sprite, snapshot.getTint(block));
+        }
+    }
+
+    // Tinted pixels of the sprite (null once completed if the sprite can't be read)
+    public CompletableFuture<BlockTextures.Pixels> pixels(Sprite sprite, int tintColor) {
+        return tinted.computeIfAbsent(BlockTextures.textureName(sprite, tintColor), key ->
+                decoded.computeIfAbsent(sprite.getContents().getId(),
+                                id -> CompletableFuture.supplyAsync(() -> BlockTextures.decode(sprite), ExportPool.get()))
+                        .thenApplyAsync(base -> base == null ? null : BlockTextures.tint(base, tintColor), ExportPool.get()));
+    }
+
+    // PNG bytes of the tinted sprite (null once completed if the sprite can't be read)
+    public CompletableFuture<byte[]> png(Sprite sprite, int tintColor) {
+        return pixels(sprite, tintColor).thenApplyAsync(pixels -> {
+            if (pixels == null) return null;
+            try {
+                return BlockTextures.pngBytes(pixels);
+            } catch (IOException e) {
+                System.err.println("Error encoding texture: " + BlockTextures.textureName(sprite, tintColor));
+                return null;
+            }
+        }, ExportPool.get());
+    }
+
+    // Writes the tinted sprite to a PNG file in the background, see await(). Blocks sharing a sprite and tint
+    // (planks, stairs, slabs...) ask for the same file: only the first call writes it.
+    public void savePng(Sprite sprite, int tintColor, File outputFile) {
+        Path path = outputFile.toPath().toAbsolutePath().normalize();
+        files.computeIfAbsent(path, p -> pixels(sprite, tintColor).thenAcceptAsync(pixels -> {
+            if (pixels == null) return;
+            try {
+                BlockTextures.writePng(pixels, p);
+            } catch (IOException e) {
+                System.err.println("Error saving texture: " + outputFile.getName());
+            }
+        }, ExportPool.get()));
+    }
+
+    // Waits for every PNG file queued by savePng(), call it before reporting the export as done
+    public void await() throws IOException {
+        try {
+            CompletableFuture.allOf(files.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw new IOException("Texture export failed", e.getCause());
+        }
+    }
+}
@@ -10,157 +10,168 @@
 
 package fr.outerleys.giovanni.mcto3dFabric.client.utils;
 
-import fr.outerleys.giovanni.mcto3dFabric.selection.Cuboid;
 import net.minecraft.block.AbstractPlantPartBlock;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.PlantBlock;
 import net.minecraft.block.TorchBlock;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Direction;
 import net.minecraft.util.shape.VoxelShape;
-import net.minecraft.world.World;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class StlExporter {
 
-    private final byte[] headerChunk = new byte[80];
-    private final byte[] countChunk = new byte[4];
+    private final boolean parallel;
+    private final boolean cache;
+    private final boolean gzip;
 
-    public void export(Cuboid cuboid, World world, File file, float scale, Consumer<Float> progressCallback) throws IOException {
+    // Same defaults as /export3d: the cache stays opt-in
+    public StlExporter() {
+        this(true, false);
+    }
 
-        long totalBlocks = (long) (cuboid.getMaxX() - cuboid.getMinX() + 1) * (long) (cuboid.getMaxY() - cuboid.getMinY() + 1) * (long) (cuboid.getMaxZ() - cuboid.getMinZ() + 1);
-        long currentBlock = 0;
+    public StlExporter(boolean parallel) {
+        this(parallel, false);
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            // Write standard STL Header (80 bytes empty)
-            fos.write(headerChunk);
-            // Write Triangle Count placeholder (will need to be patched later if accurate count is strictly required,
-            // but many viewers ignore it or we rely on the stream writing)
-            // Note: Standard STL requires an accurate count here.
-            // For simple streaming, we often leave 0 or patch it after.
-            // Given the streaming nature here, we write 0 placeholders.
-            fos.write(countChunk);
+    // parallel = false meshes the sections one by one on the calling thread (same bytes, easier to debug)
+    // cache = true reuses the sections that didn't change since the last export of the same file (see ExportCache)
+    public StlExporter(boolean parallel, boolean cache) {
+        this(parallel, cache, false);
+    }
 
-            BlockPos.Mutable mutablePos = new BlockPos.Mutable();
-            BlockPos.Mutable neighborPos = new BlockPos.Mutable();
+    // gzip = true writes <file>.gz, compressed in the background while meshing
+    public StlExporter(boolean parallel, boolean cache, boolean gzip) {
+        this.parallel = parallel;
+        this.cache = cache;
+        this.gzip = gzip;
+    }
 
-            // Buffer for one triangle (50 bytes: 12 floats + 2 bytes attribute)
-            ByteBuffer buf = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
+    public void export(VoxelSnapshot snapshot, File file, float scale, Consumer<Float> progressCallback) throws IOException {
+
+        // Culling bits, built once and read by every section
+        OccupancyGrid grid = BlockFaces.grid(snapshot);
+
+        List<SectionedExport.Section> sections = SectionedExport.split(snapshot);
+
+        // The writer counts the triangles and patches the header on close
+        StlWriter writer = new StlWriter(file, gzip);
+        try (ExportCache fragments = cache ? ExportCache.open(file, ExportCache.context("stl", scale), snapshot, sections) : null) {
+            // Each section is meshed into its own buffer (or read back from the cache), then appended in section order
+            SectionedExport.forEachOrdered(sections, parallel,
+                    section -> {
+                        byte[] cached = fragments != null ? fragments.get(section) : null;
+                        return cached != null ? cached : meshSection(snapshot, grid, section, scale);
+                    },
+                    (section, triangles) -> {
+                        if (fragments != null) fragments.put(section, triangles);
+                        writer.writeEncoded(triangles, triangles.length);
+                    },
+                    progressCallback);
+            if (fragments != null) fragments.commit();
+        } catch (IOException | RuntimeException e) {
+            writer.abort(); // Failed or cancelled: no truncated .stl.gz left behind
+            throw e;
+        }
+        writer.close();
+    }
 
-            for (int x = cuboid.getMinX(); x <= cuboid.getMaxX(); x++) {
+    private byte[] meshSection(VoxelSnapshot snapshot, OccupancyGrid grid, SectionedExport.Section section, float scale) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
 
-                float p = (float) currentBlock / totalBlocks;
-                progressCallback.accept(p);
+        // Buffer for one triangle (50 bytes: 12 floats + 2 bytes attribute)
+        ByteBuffer buf = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
 
-                for (int y = cuboid.getMinY(); y <= cuboid.getMaxY(); y++) {
-                    for (int z = cuboid.getMinZ(); z <= cuboid.getMaxZ(); z++) {
-                        currentBlock++;
-                        mutablePos.set(x, y, z);
-                        BlockState state = world.getBlockState(mutablePos);
-                        if (state.isAir()) continue;
+        try {
+            for (int x = section.minX(); x <= section.maxX(); x++) {
+                for (int y = section.minY(); y <= section.maxY(); y++) {
+                    for (int word = section.minZ() >>> 6; word <= section.maxZ() >>> 6; word++) {
+                        // Culling optimization: Skip air and internal blocks, 64 at a time
+                        long blocks = grid.solidWord(x, y, word) & BlockFaces.sectionMask(section, word);
+                        if (blocks != 0) blocks &= ~grid.hiddenCubes(x, y, word);
 
-                        // Culling optimization: Skip internal blocks
-                        if (state.isOpaqueFullCube()) {
-                            if (isHidden(world, mutablePos, neighborPos, cuboid)) continue;
-                        }
+                        while (blocks != 0) {
+                            int z = (word << 6) + Long.numberOfTrailingZeros(blocks);
+                            blocks &= blocks - 1;
 
-                        double relX = x - cuboid.getMinX();
-                        double relY = y - cuboid.getMinY();
-                        double relZ = z - cuboid.getMinZ();
+                            int block = snapshot.get(x, y, z);
+                            BlockState state = snapshot.getState(block);
 
-                        if (isPlantOrFlat(state.getBlock())) {
-                            // Apply scale directly
-                            writePlantCrossStl(fos, buf, (float)relX, (float)relY, (float)relZ, scale);
-                        }
-                        else {
-                            VoxelShape shape = state.getOutlineShape(world, mutablePos);
-                            if (!shape.isEmpty()) {
-                                shape.forEachBox((minX, minY, minZ, maxX, maxY, maxZ) -> {
-                                    try {
-                                        // Apply scale to box limits
-                                        writeBoxStl(fos, buf,
-                                                (float)((relX + minX) * scale), (float)((relY + minY) * scale), (float)((relZ + minZ) * scale),
-                                                (float)((relX + maxX) * scale), (float)((relY + maxY) * scale), (float)((relZ + maxZ) * scale)
-                                        );
-                                    } catch (IOException e) { throw new RuntimeException(e); }
-                                });
+                            double relX = x;
+                            double relY = y;
+                            double relZ = z;
+
+                            if (isPlantOrFlat(state.getBlock())) {
+                                // Apply scale directly
+                                writePlantCrossStl(out, buf, (float)relX, (float)relY, (float)relZ, scale);
+                            }
+                            else {
+                                VoxelShape shape = snapshot.getShape(block);
+                                if (!shape.isEmpty()) {
+                                    shape.forEachBox((minX, minY, minZ, maxX, maxY, maxZ) -> {
+                                        try {
+                                            // Apply scale to box limits
+                                            writeBoxStl(out, buf,
+                                                    (float)((relX + minX) * scale), (float)((relY + minY) * scale), (float)((relZ + minZ) * scale),
+                                                    (float)((relX + maxX) * scale), (float)((relY + maxY) * scale), (float)((relZ + maxZ) * scale)
+                                            );
+                                        } catch (IOException e) { throw new RuntimeException(e); }
+                                    });
+                                }
                             }
                         }
                     }
                 }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        progressCallback.accept(1.0f);
-    }
-
-    // --- CULLING LOGIC ---
-
-    // A block is "Hidden" only if all 6 neighbors are opaque AND inside the selection.
-    private boolean isHidden(World world, BlockPos pos, BlockPos.Mutable neighborPos, Cuboid c) {
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.UP), c)) return false;
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.DOWN), c)) return false;
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.NORTH), c)) return false;
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.SOUTH), c)) return false;
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.WEST), c)) return false;
-        if (!isSideBlocked(world, neighborPos.set(pos, Direction.EAST), c)) return false;
-        return true; // All faces are hidden by solid blocks
-    }
-
-    private boolean isSideBlocked(World world, BlockPos neighbor, Cuboid c) {
-        // GOLDEN RULE: If the neighbor is OUTSIDE the selection, the block is NOT hidden.
-        // We consider the edge of the selection as a visible cut.
-        if (neighbor.getX() < c.getMinX() || neighbor.getX() > c.getMaxX() ||
-                neighbor.getY() < c.getMinY() || neighbor.getY() > c.getMaxY() ||
-                neighbor.getZ() < c.getMinZ() || neighbor.getZ() > c.getMaxZ()) {
-            return false; // It's the edge -> draw it!
-        }
-
-        // Otherwise, check if it's a real opaque block
-        return world.getBlockState(neighbor).isOpaqueFullCube();
+        return out.toByteArray();
     }
 
     // --- BINARY WRITING ---
 
-    private void writeBoxStl(FileOutputStream fos, ByteBuffer buf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) throws IOException {
+    private void writeBoxStl(OutputStream out, ByteBuffer buf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) throws IOException {
         // Coordinates are already scaled, write directly
         // Bottom
-        writeFace(fos, buf, minX, minY, minZ, maxX, minY, minZ, maxX, minY, maxZ, minX, minY, maxZ, 0f, -1f, 0f);
+        writeFace(out, buf, minX, minY, minZ, maxX, minY, minZ, maxX, minY, maxZ, minX, minY, maxZ, 0f, -1f, 0f);
         // Top
-        writeFace(fos, buf, minX, maxY, minZ, minX, maxY, maxZ, maxX, maxY, maxZ, maxX, maxY, minZ, 0f, 1f, 0f);
+        writeFace(out, buf, minX, maxY, minZ, minX, maxY, maxZ, maxX, maxY, maxZ, maxX, maxY, minZ, 0f, 1f, 0f);
         // North
-        writeFace(fos, buf, minX, minY, minZ, minX, maxY, minZ, maxX, maxY, minZ, maxX, minY, minZ, 0f, 0f, -1f);
+        writeFace(out, buf, minX, minY, minZ, minX, maxY, minZ, maxX, maxY, minZ, maxX, minY, minZ, 0f, 0f, -1f);
         // South
-        writeFace(fos, buf, minX, minY, maxZ, maxX, minY, maxZ, maxX, maxY, maxZ, minX, maxY, maxZ, 0f, 0f, 1f);
+        writeFace(out, buf, minX, minY, maxZ, maxX, minY, maxZ, maxX, maxY, maxZ, minX, maxY, maxZ, 0f, 0f, 1f);
         // West
-        writeFace(fos, buf, minX, minY, minZ, minX, minY, maxZ, minX, maxY, maxZ, minX, maxY, minZ, -1f, 0f, 0f);
+        writeFace(out, buf, minX, minY, minZ, minX, minY, maxZ, minX, maxY, maxZ, minX, maxY, minZ, -1f, 0f, 0f);
         // East
-        writeFace(fos, buf, maxX, minY, minZ, maxX, maxY, minZ, maxX, maxY, maxZ, maxX, minY, maxZ, 1f, 0f, 0f);
+        writeFace(out, buf, maxX, minY, minZ, maxX, maxY, minZ, maxX, maxY, maxZ, maxX, minY, maxZ, 1f, 0f, 0f);
     }
 
-    private void writePlantCrossStl(FileOutputStream fos, ByteBuffer buf, float x, float y, float z, float scale) throws IOException {
+    private void writePlantCrossStl(OutputStream out, ByteBuffer buf, float x, float y, float z, float scale) throws IOException {
         float thick = 0.2f;
         float off = (1.0f - thick) / 2.0f;
         float h = 0.8f;
 
         // Multiply everything by scale
-        writeBoxStl(fos, buf, (x + off)*scale, y*scale, (z + 0.1f)*scale, (x + off + thick)*scale, (y + h)*scale, (z + 0.9f)*scale);
-        writeBoxStl(fos, buf, (x + 0.1f)*scale, y*scale, (z + off)*scale, (x + 0.9f)*scale, (y + h)*scale, (z + off + thick)*scale);
+        writeBoxStl(out, buf, (x + off)*scale, y*scale, (z + 0.1f)*scale, (x + off + thick)*scale, (y + h)*scale, (z + 0.9f)*scale);
+        writeBoxStl(out, buf, (x + 0.1f)*scale, y*scale, (z + off)*scale, (x + 0.9f)*scale, (y + h)*scale, (z + off + thick)*scale);
     }
 
-    private void writeFace(FileOutputStream fos, ByteBuffer buf, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float x4, float y4, float z4, float nx, float ny, float nz) throws IOException {
+    private void writeFace(OutputStream out, ByteBuffer buf, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float x4, float y4, float z4, float nx, float ny, float nz) throws IOException {
         // Quad = 2 Triangles
-        writeTriangle(fos, buf, x1, y1, z1, x2, y2, z2, x3, y3, z3, nx, ny, nz);
-        writeTriangle(fos, buf, x1, y1, z1, x3, y3, z3, x4, y4, z4, nx, ny, nz);
+        writeTriangle(out, buf, x1, y1, z1, x2, y2, z2, x3, y3, z3, nx, ny, nz);
+        writeTriangle(out, buf, x1, y1, z1, x3, y3, z3, x4, y4, z4, nx, ny, nz);
     }
 
-    private void writeTriangle(FileOutputStream fos, ByteBuffer buf, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float nx, float ny, float nz) throws IOException {
+    private void writeTriangle(OutputStream out, ByteBuffer buf, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float nx, float ny, float nz) throws IOException {
         buf.clear();
         // Normal vector
         buf.putFloat(nx); buf.putFloat(ny); buf.putFloat(nz);
@@ -172,7 +183,7 @@ public class StlExporter {
         buf.putFloat(x3); buf.putFloat(y3); buf.putFloat(z3);
         // Attribute byte count (unused in standard STL)
         buf.putShort((short) 0);
-        fos.write(buf.array());
+        out.write(buf.array());
     }
 
     private boolean isPlantOrFlat(Block block) {
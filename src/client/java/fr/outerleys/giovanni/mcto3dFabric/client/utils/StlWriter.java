@@ -0,0 +1,97 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Streaming binary STL writer: triangles are put straight into the BinaryOutput window,
+// and the real triangle count is patched into the header when the writer is closed.
+public class StlWriter implements AutoCloseable {
+
+    public static final int HEADER_SIZE = 80;
+    public static final int TRIANGLE_SIZE = 50; // 12 floats + 2 bytes attribute
+
+    private static final long MAX_TRIANGLES = 0xFFFFFFFFL; // The count is an unsigned 32-bit int
+
+    private final BinaryOutput out;
+    private long triangleCount = 0;
+
+    public StlWriter(File file) throws IOException {
+        this(file, false);
+    }
+
+    // gzip: writes file + ".gz" instead, compressed in the background (the header stays patchable)
+    public StlWriter(File file, boolean gzip) throws IOException {
+        out = gzip ? BinaryOutput.gzip(GzipOutput.gzFile(file), HEADER_SIZE + 4) : BinaryOutput.streamed(file);
+
+        // Standard STL header (80 bytes empty)
+        out.put(new byte[HEADER_SIZE]);
+        out.reserve(4).putInt(0); // Triangle count placeholder, patched in close()
+    }
+
+    public void writeTriangle(float nx, float ny, float nz,
+                              float x1, float y1, float z1,
+                              float x2, float y2, float z2,
+                              float x3, float y3, float z3) throws IOException {
+        ByteBuffer buffer = out.reserve(TRIANGLE_SIZE);
+        // Normal vector
+        buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+        // Vertices
+        buffer.putFloat(x1).putFloat(y1).putFloat(z1);
+        buffer.putFloat(x2).putFloat(y2).putFloat(z2);
+        buffer.putFloat(x3).putFloat(y3).putFloat(z3);
+        // Attribute byte count (unused in standard STL)
+        buffer.putShort((short) 0);
+        triangleCount++;
+    }
+
+    // Quad = 2 Triangles (1-2-3, 1-3-4)
+    public void writeQuad(float nx, float ny, float nz,
+                          float x1, float y1, float z1, float x2, float y2, float z2,
+                          float x3, float y3, float z3, float x4, float y4, float z4) throws IOException {
+        writeTriangle(nx, ny, nz, x1, y1, z1, x2, y2, z2, x3, y3, z3);
+        writeTriangle(nx, ny, nz, x1, y1, z1, x3, y3, z3, x4, y4, z4);
+    }
+
+    // Appends triangles that were already encoded (50 bytes each, little endian), e.g. by a worker thread
+    public void writeEncoded(byte[] triangles, int length) throws IOException {
+        if (length % TRIANGLE_SIZE != 0) throw new IllegalArgumentException("Not a whole number of triangles: " + length + " bytes");
+
+        out.put(triangles, 0, length);
+        triangleCount += length / TRIANGLE_SIZE;
+    }
+
+    public long getTriangleCount() {
+        return triangleCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (triangleCount > MAX_TRIANGLES) {
+                throw new IOException("Too many triangles for a binary STL: " + triangleCount);
+            }
+            // Patch the real count
+            out.patchInt(HEADER_SIZE, (int) triangleCount);
+        } catch (IOException | RuntimeException e) {
+            out.abort();
+            throw e;
+        }
+        out.close();
+    }
+
+    // Failed or cancelled export: see BinaryOutput.abort()
+    public void abort() {
+        out.abort();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.Sprite;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Packs every (sprite, tint) used by an export into ONE power-of-two PNG, so the OBJ needs a single
+// material and a single texture. Usage: add() every block, build() once, then read the tiles' UVs.
+public class TextureAtlas {
+
+    public static final String MATERIAL = "mcto3d_atlas";
+
+    private static final int PADDING = 2; // Edge pixels repeated around each tile, so mipmaps/filtering don't bleed
+    private static final int FALLBACK_SIZE = 4; // Plain color tile for blocks without a readable sprite
+
+    private final SpriteCache sprites;
+    private final List<CompletableFuture<BlockTextures.Pixels>> pendingTiles = new ArrayList<>();
+    private final List<Integer> fallbackColors = new ArrayList<>();
+    private final Map<String, Integer> tileIds = new LinkedHashMap<>();
+    private List<BlockTextures.Pixels> tiles;
+    private int size = 0;
+    private float[] uvs; // u0, v0, u1, v1 per tile (OBJ convention: v = 0 at the bottom)
+
+    // Sprites are decoded and tinted on the export pool through the cache, build() collects them
+    public TextureAtlas(SpriteCache sprites) {
+        this.sprites = sprites;
+    }
+
+    // Tile of the block's texture (its map color when the sprite can't be read)
+    public int add(BlockState state, int tintColor, int fallbackColor) {
+        Sprite sprite = BlockTextures.getSprite(state);
+        String key = sprite != null ? BlockTextures.textureName(sprite, tintColor) : "color_" + Integer.toHexString(fallbackColor);
+
+        Integer existing = tileIds.get(key);
+        if (existing != null) return existing;
+
+        pendingTiles.add(sprite != null ? sprites.pixels(sprite, tintColor) : CompletableFuture.completedFuture(null));
+        fallbackColors.add(fallbackColor);
+        tileIds.put(key, pendingTiles.size() - 1);
+        return pendingTiles.size() - 1;
+    }
+
+    private BlockTextures.Pixels resolve(int tile) {
+        BlockTextures.Pixels pixels = firstFrame(pendingTiles.get(tile).join());
+        if (pixels == null) {
+            int[] argb = new int[FALLBACK_SIZE * FALLBACK_SIZE];
+            Arrays.fill(argb, 0xFF000000 | fallbackColors.get(tile));
+            pixels = new BlockTextures.Pixels(FALLBACK_SIZE, FALLBACK_SIZE, argb);
+        }
+        return pixels;
+    }
+
+    // Animated textures are vertical strips of square frames: keep the first one
+    private static BlockTextures.Pixels firstFrame(BlockTextures.Pixels pixels) {
+        if (pixels == null || pixels.height() <= pixels.width() || pixels.height() % pixels.width() != 0) return pixels;
+        int[] frame = new int[pixels.width() * pixels.width()];
+        System.arraycopy(pixels.argb(), 0, frame, 0, frame.length);
+        return new BlockTextures.Pixels(pixels.width(), pixels.width(), frame);
+    }
+
+    // Packs the tiles (shelves, tallest first) into the smallest square power-of-two image and writes it
+    public void build(File pngFile) throws IOException {
+        int count = pendingTiles.size();
+        tiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) tiles.add(resolve(i));
+
+        Integer[] order = new Integer[count];
+        long area = 0;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            area += (long) (tiles.get(i).width() + 2 * PADDING) * (tiles.get(i).height() + 2 * PADDING);
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(tiles.get(b).height(), tiles.get(a).height()));
+
+        size = Math.max(16, Integer.highestOneBit((int) Math.max(1, Math.ceil(Math.sqrt(area)))));
+        int[] positions;
+        while ((positions = pack(order, size)) == null) size *= 2;
+
+        uvs = new float[count * 4];
+        try (NativeImage image = new NativeImage(size, size, true)) {
+            for (int i = 0; i < count; i++) {
+                BlockTextures.Pixels tile = tiles.get(i);
+                int x0 = positions[i * 2];
+                int y0 = positions[i * 2 + 1];
+                int w = tile.width();
+                int h = tile.height();
+
+                // Tile + padding (clamped to the tile edges)
+                for (int y = -PADDING; y < h + PADDING; y++) {
+                    int sy = Math.min(h - 1, Math.max(0, y));
+                    for (int x = -PADDING; x < w + PADDING; x++) {
+                        int sx = Math.min(w - 1, Math.max(0, x));
+                        image.setColorArgb(x0 + PADDING + x, y0 + PADDING + y, tile.argb()[sy * w + sx]);
+                    }
+                }
+
+                uvs[i * 4] = (float) (x0 + PADDING) / size;
+                uvs[i * 4 + 1] = 1.0f - (float) (y0 + PADDING + h) / size;
+                uvs[i * 4 + 2] = (float) (x0 + PADDING + w) / size;
+                uvs[i * 4 + 3] = 1.0f - (float) (y0 + PADDING) / size;
+            }
+            image.writeTo(pngFile.toPath());
+        }
+        System.out.println("Texture atlas: " + count + " tiles in " + size + "x" + size);
+    }
+
+    // Top-left corner of every tile's cell (including padding), or null if they don't fit
+    private int[] pack(Integer[] order, int atlasSize) {
+        int[] positions = new int[tiles.size() * 2];
+        int x = 0, y = 0, shelfHeight = 0;
+        for (int i : order) {
+            int w = tiles.get(i).width() + 2 * PADDING;
+            int h = tiles.get(i).height() + 2 * PADDING;
+            if (w > atlasSize) return null;
+            if (x + w > atlasSize) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            if (y + h > atlasSize) return null;
+            positions[i * 2] = x;
+            positions[i * 2 + 1] = y;
+            x += w;
+            shelfHeight = Math.max(shelfHeight, h);
+        }
+        return positions;
+    }
+
+    // Atlas UV of a point (u, v in 0..1) inside a tile
+    public float u(int tile, double u) {
+        return (float) (uvs[tile * 4] + (uvs[tile * 4 + 2] - uvs[tile * 4]) * u);
+    }
+
+    public float v(int tile, double v) {
+        return (float) (uvs[tile * 4 + 1] + (uvs[tile * 4 + 3] - uvs[tile * 4 + 1]) * v);
+    }
+
+    // Changes whenever a texture lands somewhere else in the atlas (cached OBJ text embeds the atlas UVs)
+    public String signature() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> tile : tileIds.entrySet()) {
+            int i = tile.getValue() * 4;
+            text.append(tile.getKey()).append('@')
+                    .append(uvs[i]).append(',').append(uvs[i + 1]).append(',')
+                    .append(uvs[i + 2]).append(',').append(uvs[i + 3]).append(';');
+        }
+        return text.toString();
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.registry.Registries;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Colored 3MF export of the legacy engine (one box per block shape, see BlockFaces).
+// One palette entry per distinct map color, so the slicer gets one filament slot per color.
+public class ThreeMfExporter {
+
+    private final boolean parallel;
+
+    public ThreeMfExporter() {
+        this(true);
+    }
+
+    // parallel = false meshes the sections one by one on the calling thread (same bytes, easier to debug)
+    public ThreeMfExporter(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void export(VoxelSnapshot snapshot, File file, float scale, Consumer<Float> progressCallback) throws IOException {
+        System.out.println("--- START EXPORT 3MF ---");
+
+        // Palette: distinct map colors, named after the first block using them
+        Map<Integer, Integer> colorIndex = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] materials = new int[snapshot.getPaletteSize()];
+        for (int block = 0; block < snapshot.getPaletteSize(); block++) {
+            if (block == VoxelSnapshot.AIR) continue;
+            int color = snapshot.getMapColor(block);
+            Integer index = colorIndex.get(color);
+            if (index == null) {
+                index = colorIndex.size();
+                colorIndex.put(color, index);
+                names.add(Registries.BLOCK.getId(snapshot.getState(block).getBlock()).getPath());
+            }
+            materials[block] = index;
+        }
+        int[] colors = colorIndex.keySet().stream().mapToInt(Integer::intValue).toArray();
+
+        double[] corners = new double[12];
+        OccupancyGrid grid = BlockFaces.grid(snapshot);
+        ThreeMfWriter writer = new ThreeMfWriter(file, scale, snapshot.getSizeZ(), names.toArray(new String[0]), colors);
+        try {
+            SectionedExport.forEachOrdered(SectionedExport.split(snapshot), parallel,
+                    section -> BlockFaces.mesh(snapshot, grid, section, true),
+                    (section, faces) -> {
+                        for (int i = 0; i < faces.count; i++) {
+                            System.arraycopy(faces.corners, i * 12, corners, 0, 12);
+                            writer.quad(materials[faces.blocks[i]], corners);
+                        }
+                    },
+                    progressCallback);
+        } catch (IOException | RuntimeException e) {
+            writer.abort(); // Failed or cancelled: no truncated .3mf
+            throw e;
+        }
+        writer.close();
+        System.out.println("3MF: " + writer.getTriangleCount() + " triangles");
+    }
+}
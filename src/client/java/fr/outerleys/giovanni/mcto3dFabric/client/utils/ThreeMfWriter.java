@@ -0,0 +1,297 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// 3MF writer (zipped XML mesh + basematerials palette, one color per triangle) for multi-material slicers.
+// The XML is streamed, never built in memory: vertices go straight into the zip entry as they are first seen,
+// triangles wait in a temp file (16 bytes each) until the vertex list is closed.
+public class ThreeMfWriter implements AutoCloseable {
+
+    private static final String CONTENT_TYPES = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">
+             <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>
+             <Default Extension="model" ContentType="application/vnd.ms-package.3dmanufacturing-3dmodel+xml"/>
+            </Types>
+            """;
+
+    private static final String RELATIONSHIPS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">
+             <Relationship Target="/3D/3dmodel.model" Id="rel0" Type="http://schemas.microsoft.com/3dmanufacturing/2013/01/3dmodel"/>
+            </Relationships>
+            """;
+
+    private static final int MATERIALS_ID = 1;
+    private static final int OBJECT_ID = 2;
+    private static final double QUANTUM = 256.0; // Positions snapped to 1/256 block before deduplication, like IndexedObjWriter
+
+    private final File file;
+    private final ZipOutputStream zip;
+    private final ObjLineEncoder xml; // Plain ASCII encoder, used here for XML
+    private final float scale;
+    private final double depth;
+    private final VertexIds vertexIds = new VertexIds(1 << 16);
+    private int vertexCount = 0;
+
+    private final File triangleFile;
+    private final DataOutputStream triangles;
+    private long triangleCount = 0;
+
+    /**
+     * Positions are given in block units (Minecraft axes, Y up), multiplied by scale (1 block = scale mm)
+     * and turned Z up for the build plate. depth is the size of the model along Minecraft Z.
+     * The palette (name + RGB color) must be known up front: it comes before the mesh in the XML.
+     */
+    public ThreeMfWriter(File file, float scale, double depth, String[] materialNames, int[] materialColors) throws IOException {
+        this.file = file;
+        this.scale = scale;
+        this.depth = depth;
+
+        FileOutputStream fileOut = new FileOutputStream(file);
+        zip = new ZipOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+        xml = new ObjLineEncoder(zip);
+        File temp = null;
+
+        try {
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            xml.text(CONTENT_TYPES);
+            xml.flush();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("_rels/.rels"));
+            xml.text(RELATIONSHIPS);
+            xml.flush();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("3D/3dmodel.model"));
+            xml.text("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            xml.text("<model unit=\"millimeter\" xml:lang=\"en-US\" xmlns=\"http://schemas.microsoft.com/3dmanufacturing/core/2015/02\">\n");
+            xml.text(" <metadata name=\"Application\">McTo3D</metadata>\n");
+            xml.text(" <resources>\n");
+
+            xml.text("  <basematerials id=\""); xml.integer(MATERIALS_ID); xml.text("\">\n");
+            for (int i = 0; i < materialNames.length; i++) {
+                xml.text("   <base name=\""); xml.text(escape(materialNames[i]));
+                xml.text("\" displaycolor=\"#"); xml.text(String.format("%06X", materialColors[i] & 0xFFFFFF));
+                xml.text("\"/>\n");
+            }
+            xml.text("  </basematerials>\n");
+
+            xml.text("  <object id=\""); xml.integer(OBJECT_ID);
+            xml.text("\" type=\"model\" pid=\""); xml.integer(MATERIALS_ID);
+            xml.text("\" pindex=\"0\">\n");
+            xml.text("   <mesh>\n");
+            xml.text("    <vertices>\n");
+
+            temp = File.createTempFile("mcto3d_triangles", ".bin");
+            triangles = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            triangleFile = temp;
+        } catch (IOException | RuntimeException e) {
+            // Nothing usable was written: don't leave the streams open or a half-written .3mf behind
+            try {
+                xml.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            try {
+                fileOut.close(); // In case the zip gave up before closing it
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            if (temp != null) temp.delete();
+            file.delete();
+            throw e;
+        }
+    }
+
+    // corners: 4 x (x, y, z), counter-clockwise seen from outside. material = index in the palette
+    public void quad(int material, double[] corners) throws IOException {
+        int v1 = vertex(corners[0], corners[1], corners[2]);
+        int v2 = vertex(corners[3], corners[4], corners[5]);
+        int v3 = vertex(corners[6], corners[7], corners[8]);
+        int v4 = vertex(corners[9], corners[10], corners[11]);
+        triangle(v1, v2, v3, material);
+        triangle(v1, v3, v4, material);
+    }
+
+    public long getTriangleCount() {
+        return triangleCount;
+    }
+
+    // 0-based index of the vertex, written on first use
+    private int vertex(double x, double y, double z) throws IOException {
+        long qx = Math.round(x * QUANTUM), qy = Math.round(y * QUANTUM), qz = Math.round(z * QUANTUM);
+        int id = vertexIds.get(qx, qy, qz);
+        if (id == VertexIds.MISSING) {
+            id = vertexCount++;
+            vertexIds.put(qx, qy, qz, id);
+
+            // Minecraft (x, y, z) -> build plate (x, depth - z, y): a rotation, so the winding stays outward
+            xml.text("     <vertex x=\""); xml.decimal(x * scale);
+            xml.text("\" y=\""); xml.decimal((depth - z) * scale);
+            xml.text("\" z=\""); xml.decimal(y * scale);
+            xml.text("\"/>\n");
+        }
+        return id;
+    }
+
+    private void triangle(int v1, int v2, int v3, int material) throws IOException {
+        if (v1 == v2 || v2 == v3 || v1 == v3) return; // Collapsed by the lattice snapping
+        triangles.writeInt(v1);
+        triangles.writeInt(v2);
+        triangles.writeInt(v3);
+        triangles.writeInt(material);
+        triangleCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeTriangles();
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        try {
+            xml.close(); // Closes the zip
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        } finally {
+            triangleFile.delete();
+        }
+    }
+
+    // Closes the vertex list, copies the spooled triangles into the model and closes it
+    private void writeTriangles() throws IOException {
+        triangles.close();
+        xml.text("    </vertices>\n");
+        xml.text("    <triangles>\n");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(triangleFile), 1 << 16))) {
+            for (long i = 0; i < triangleCount; i++) {
+                int v1 = in.readInt();
+                int v2 = in.readInt();
+                int v3 = in.readInt();
+                int material = in.readInt();
+                xml.text("     <triangle v1=\""); xml.integer(v1);
+                xml.text("\" v2=\""); xml.integer(v2);
+                xml.text("\" v3=\""); xml.integer(v3);
+                xml.text("\" pid=\""); xml.integer(MATERIALS_ID);
+                xml.text("\" p1=\""); xml.integer(material);
+                xml.text("\"/>\n");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Triangle buffer truncated", e);
+        }
+
+        xml.text("    </triangles>\n");
+        xml.text("   </mesh>\n");
+        xml.text("  </object>\n");
+        xml.text(" </resources>\n");
+        xml.text(" <build>\n");
+        xml.text("  <item objectid=\""); xml.integer(OBJECT_ID); xml.text("\"/>\n");
+        xml.text(" </build>\n");
+        xml.text("</model>\n");
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    // Failed or cancelled export: the triangle list is never written, the .3mf and the temp file are deleted
+    public void abort() {
+        try {
+            triangles.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        try {
+            xml.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        triangleFile.delete();
+        file.delete();
+    }
+
+    // Snapped position -> vertex id, open addressing on the three full coordinates: unlike IndexedObjWriter's
+    // 21-bit lattice key, any selection size fits
+    private static class VertexIds {
+        static final int MISSING = -1;
+
+        private long[] keys; // x, y, z per slot
+        private int[] ids;
+        private int size = 0;
+        private int mask;
+
+        VertexIds(int expectedSize) {
+            allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+        }
+
+        int get(long x, long y, long z) {
+            for (int i = slot(x, y, z); ; i = (i + 1) & mask) {
+                if (ids[i] == MISSING) return MISSING;
+                if (keys[3 * i] == x && keys[3 * i + 1] == y && keys[3 * i + 2] == z) return ids[i];
+            }
+        }
+
+        // Only called for a position get() didn't find
+        void put(long x, long y, long z, int id) {
+            int i = slot(x, y, z);
+            while (ids[i] != MISSING) i = (i + 1) & mask;
+            keys[3 * i] = x;
+            keys[3 * i + 1] = y;
+            keys[3 * i + 2] = z;
+            ids[i] = id;
+            if (++size * 2 > ids.length) grow(); // Load factor 0.5
+        }
+
+        private int slot(long x, long y, long z) {
+            long h = (x * 0x9E3779B97F4A7C15L + y) * 0xBF58476D1CE4E5B9L + z;
+            h *= 0x94D049BB133111EBL;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[3 * capacity];
+            ids = new int[capacity];
+            Arrays.fill(ids, MISSING);
+            mask = capacity - 1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            allocate(ids.length * 2);
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != MISSING) put(oldKeys[3 * i], oldKeys[3 * i + 1], oldKeys[3 * i + 2], oldIds[i]);
+            }
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import fr.outerleys.giovanni.mcto3dFabric.selection.Cuboid;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.util.shape.VoxelShapes;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only copy of a selection, captured once and shared by every exporter.
+ * Blocks are stored as palette indices packed into a long[] (same idea as the vanilla PalettedContainer),
+ * so the writers never touch the live world.
+ */
+public class VoxelSnapshot {
+
+    // Palette index 0 is always air (also returned for anything outside the selection)
+    public static final int AIR = 0;
+
+    private final int originX, originY, originZ; // World position of the selection min corner
+    private final int sizeX, sizeY, sizeZ;
+
+    // --- PALETTE ---
+    // One entry per (state, tint) pair: the tint depends on the biome, the rest only on the state.
+    // Biome blending gives a new tint every few blocks, so tinted entries are capped (per state and overall)
+    // and a block past the cap reuses the closest tint of its state, or the untinted entry.
+    private static final int MAX_PALETTE = 1 << 16;
+    private static final int MAX_TINTED = 1 << 15; // Leaves half of the palette to plain states
+    private static final int MAX_TINTS_PER_STATE = 32;
+    private final List<BlockState> states = new ArrayList<>();
+    private final List<VoxelShape> shapes = new ArrayList<>();
+    private int[] tints = new int[16];
+    private int[] mapColors = new int[16];
+    private final Map<PaletteKey, Integer> lookup = new HashMap<>();
+    private final Map<BlockState, List<Integer>> tintedEntries = new HashMap<>(); // Palette indices per tinted state
+    private final Set<BlockState> untinted = new HashSet<>(); // States without a tint provider, never asked again
+
+    private record PaletteKey(BlockState state, int tint) {}
+
+    // --- PACKED INDICES (x -> y -> z order) ---
+    private int bits = 4;
+    private int valuesPerWord = 64 / bits;
+    private long mask = (1L << bits) - 1;
+    private long[] data;
+
+    private VoxelSnapshot(int originX, int originY, int originZ, int sizeX, int sizeY, int sizeZ) {
+        long volume = (long) sizeX * sizeY * sizeZ;
+        if (volume > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Selection too large for a snapshot: " + volume + " blocks");
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.data = new long[wordsFor((int) volume, valuesPerWord)];
+
+        // Reserve index 0 for air
+        states.add(Blocks.AIR.getDefaultState());
+        shapes.add(VoxelShapes.empty());
+        tints[0] = -1;
+        mapColors[0] = 0;
+    }
+
+    /**
+     * Reads the whole cuboid once. The reads are dispatched to {@code gameThread} one chunk-aligned
+     * slab at a time, so the world is never read while the game thread is modifying it and a
+     * large capture does not freeze the client in one go.
+     * tints = false skips the biome tint lookups (every entry untinted), for exports without textures.
+     */
+    public static VoxelSnapshot capture(Cuboid c, World world, Executor gameThread, boolean tints, Consumer<Float> progressCallback) {
+        VoxelSnapshot snapshot = new VoxelSnapshot(c.getMinX(), c.getMinY(), c.getMinZ(),
+                c.getMaxX() - c.getMinX() + 1,
+                c.getMaxY() - c.getMinY() + 1,
+                c.getMaxZ() - c.getMinZ() + 1);
+
+        int x = c.getMinX();
+        while (x <= c.getMaxX()) {
+            progressCallback.accept((float) (x - c.getMinX()) / snapshot.sizeX);
+
+            // Slab ends on the next chunk border (or the end of the selection)
+            int slabStart = x;
+            int slabEnd = Math.min(c.getMaxX(), ((x >> 4) + 1) * 16 - 1);
+            CompletableFuture.runAsync(() -> snapshot.captureSlab(c, world, tints, slabStart, slabEnd), gameThread).join();
+            x = slabEnd + 1;
+        }
+
+        progressCallback.accept(1.0f);
+        return snapshot;
+    }
+
+    // Walks the slab chunk by chunk and section by section: each ChunkSection is fetched once and read
+    // with local coordinates (a palette lookup), instead of a chunk + section lookup per block.
+    private void captureSlab(Cuboid c, World world, boolean tints, int fromX, int toX) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        var blockColors = MinecraftClient.getInstance().getBlockColors();
+
+        // Small cache: consecutive blocks are very often identical
+        BlockState lastState = null;
+        int lastTint = 0;
+        int lastIndex = AIR;
+
+        for (int chunkZ = c.getMinZ() >> 4; chunkZ <= c.getMaxZ() >> 4; chunkZ++) {
+            WorldChunk chunk = world.getChunk(fromX >> 4, chunkZ);
+            ChunkSection[] sections = chunk.getSectionArray();
+            int fromZ = Math.max(c.getMinZ(), chunkZ << 4);
+            int toZ = Math.min(c.getMaxZ(), (chunkZ << 4) + 15);
+
+            for (int sectionY = c.getMinY() >> 4; sectionY <= c.getMaxY() >> 4; sectionY++) {
+                int sectionIndex = chunk.sectionCoordToIndex(sectionY);
+                if (sectionIndex < 0 || sectionIndex >= sections.length) continue; // Outside the world height = air
+                ChunkSection section = sections[sectionIndex];
+                if (section == null || section.isEmpty()) continue; // Array is zero-filled = air
+
+                int fromY = Math.max(c.getMinY(), sectionY << 4);
+                int toY = Math.min(c.getMaxY(), (sectionY << 4) + 15);
+
+                for (int x = fromX; x <= toX; x++) {
+                    for (int y = fromY; y <= toY; y++) {
+                        for (int z = fromZ; z <= toZ; z++) {
+                            BlockState state = section.getBlockState(x & 15, y & 15, z & 15);
+                            if (state.isAir()) continue;
+
+                            pos.set(x, y, z);
+                            int tint = -1;
+                            if (tints && !untinted.contains(state)) {
+                                try {
+                                    tint = blockColors.getColor(state, world, pos, 0);
+                                } catch (Exception e) {
+                                    // Ignore color tint errors
+                                }
+                                // -1 = no tint provider for this state: the same everywhere
+                                if (tint == -1 && !tintedEntries.containsKey(state)) untinted.add(state);
+                            }
+
+                            int paletteIndex;
+                            if (state == lastState && tint == lastTint) {
+                                paletteIndex = lastIndex;
+                            } else {
+                                paletteIndex = getOrRegister(state, tint, world, pos);
+                                lastState = state;
+                                lastTint = tint;
+                                lastIndex = paletteIndex;
+                            }
+
+                            set(index(x - c.getMinX(), y - c.getMinY(), z - c.getMinZ()), paletteIndex);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // --- LEVEL OF DETAIL ---
+
+    /**
+     * Coarse copy for lod=n: every voxel stands for n x n x n blocks and takes their vote: air if more than half
+     * of them are air, else the most common block. The palette is kept (same materials and textures),
+     * so the result is exported like any snapshot, with the scale multiplied by n.
+     */
+    public VoxelSnapshot downsample(int n, Consumer<Float> progressCallback) {
+        if (n <= 1) return this;
+
+        VoxelSnapshot coarse = new VoxelSnapshot(originX, originY, originZ,
+                Math.ceilDiv(sizeX, n), Math.ceilDiv(sizeY, n), Math.ceilDiv(sizeZ, n));
+        for (int block = 1; block < states.size(); block++) {
+            coarse.states.add(states.get(block));
+            coarse.shapes.add(shapes.get(block));
+        }
+        coarse.tints = tints.clone();
+        coarse.mapColors = mapColors.clone();
+        coarse.lookup.putAll(lookup);
+        while (coarse.states.size() - 1 > coarse.mask) coarse.grow();
+
+        // Voted in parallel a batch of x layers at a time, packed here (neighboring layers share words)
+        int batch = ExportPool.get().getParallelism() * 2;
+        int layer = coarse.sizeY * coarse.sizeZ;
+        for (int x0 = 0; x0 < coarse.sizeX; x0 += batch) {
+            progressCallback.accept((float) x0 / coarse.sizeX);
+            int first = x0;
+            int count = Math.min(batch, coarse.sizeX - x0);
+            int[][] layers = new int[count][];
+            ExportPool.get().submit(() -> IntStream.range(0, count).parallel()
+                    .forEach(i -> layers[i] = voteLayer(coarse, first + i, n))).join();
+
+            for (int i = 0; i < count; i++) {
+                int base = (first + i) * layer;
+                for (int j = 0; j < layer; j++) {
+                    if (layers[i][j] != AIR) coarse.set(base + j, layers[i][j]);
+                }
+            }
+        }
+
+        progressCallback.accept(1.0f);
+        return coarse;
+    }
+
+    // Votes of the coarse layer cx, in coarse (y, z) order
+    private int[] voteLayer(VoxelSnapshot coarse, int cx, int n) {
+        int[] result = new int[coarse.sizeY * coarse.sizeZ];
+        int[] blocks = new int[n * n * n];
+        int[] counts = new int[n * n * n];
+
+        for (int cy = 0; cy < coarse.sizeY; cy++) {
+            for (int cz = 0; cz < coarse.sizeZ; cz++) {
+                int distinct = 0;
+                int cells = 0;
+                int air = 0;
+                for (int x = cx * n; x < Math.min(sizeX, cx * n + n); x++) {
+                    for (int y = cy * n; y < Math.min(sizeY, cy * n + n); y++) {
+                        for (int z = cz * n; z < Math.min(sizeZ, cz * n + n); z++) {
+                            cells++;
+                            int block = getPacked(index(x, y, z));
+                            if (block == AIR) {
+                                air++;
+                                continue;
+                            }
+                            // Few distinct blocks per cell: a linear scan beats a map
+                            int k = 0;
+                            while (k < distinct && blocks[k] != block) k++;
+                            if (k == distinct) {
+                                blocks[distinct] = block;
+                                counts[distinct++] = 0;
+                            }
+                            counts[k]++;
+                        }
+                    }
+                }
+                if (air * 2 > cells) continue; // Mostly air (a half-full cell is kept)
+
+                int best = 0;
+                for (int k = 1; k < distinct; k++) {
+                    if (counts[k] > counts[best]) best = k;
+                }
+                result[cy * coarse.sizeZ + cz] = blocks[best];
+            }
+        }
+        return result;
+    }
+
+    private int getOrRegister(BlockState state, int tint, World world, BlockPos pos) {
+        PaletteKey key = new PaletteKey(state, tint);
+        Integer existing = lookup.get(key);
+        if (existing != null) return existing;
+
+        if (tint != -1) {
+            List<Integer> variants = tintedEntries.computeIfAbsent(state, s -> new ArrayList<>());
+            if (variants.size() >= MAX_TINTS_PER_STATE || states.size() >= MAX_TINTED) {
+                if (variants.isEmpty()) return getOrRegister(state, -1, world, pos);
+                int closest = closestTint(variants, tint);
+                lookup.put(key, closest); // Same answer next time, without the search
+                return closest;
+            }
+        }
+
+        int paletteIndex = states.size();
+        if (paletteIndex >= MAX_PALETTE) throw new IllegalStateException("Too many distinct blocks in selection");
+
+        // Shape and map color are resolved once, at the first position the state is seen
+        states.add(state);
+        shapes.add(state.getOutlineShape(world, pos));
+        if (paletteIndex >= tints.length) {
+            tints = Arrays.copyOf(tints, tints.length * 2);
+            mapColors = Arrays.copyOf(mapColors, mapColors.length * 2);
+        }
+        tints[paletteIndex] = tint;
+        mapColors[paletteIndex] = state.getMapColor(world, pos).color;
+        lookup.put(key, paletteIndex);
+        if (tint != -1) tintedEntries.get(state).add(paletteIndex);
+
+        if (paletteIndex > mask) grow();
+        return paletteIndex;
+    }
+
+    // Palette entry of the list whose tint is nearest to the given one (squared RGB distance)
+    private int closestTint(List<Integer> entries, int tint) {
+        int best = entries.get(0);
+        int bestDistance = Integer.MAX_VALUE;
+        for (int entry : entries) {
+            int other = tints[entry];
+            int dr = ((tint >> 16) & 0xFF) - ((other >> 16) & 0xFF);
+            int dg = ((tint >> 8) & 0xFF) - ((other >> 8) & 0xFF);
+            int db = (tint & 0xFF) - (other & 0xFF);
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // --- PACKED ARRAY ---
+
+    private static int wordsFor(int values, int perWord) {
+        return (values + perWord - 1) / perWord;
+    }
+
+    private int index(int x, int y, int z) {
+        return (x * sizeY + y) * sizeZ + z;
+    }
+
+    private void set(int index, int value) {
+        int word = index / valuesPerWord;
+        int shift = (index - word * valuesPerWord) * bits;
+        data[word] = (data[word] & ~(mask << shift)) | ((long) value << shift);
+    }
+
+    private int getPacked(int index) {
+        int word = index / valuesPerWord;
+        int shift = (index - word * valuesPerWord) * bits;
+        return (int) ((data[word] >>> shift) & mask);
+    }
+
+    // Doubles the bits per entry once the palette outgrows the current width (4 -> 8 -> 16)
+    private void grow() {
+        int oldBits = bits;
+        int oldPerWord = valuesPerWord;
+        long oldMask = mask;
+        long[] oldData = data;
+
+        int volume = sizeX * sizeY * sizeZ;
+        bits = oldBits * 2;
+        valuesPerWord = 64 / bits;
+        mask = (1L << bits) - 1;
+        data = new long[wordsFor(volume, valuesPerWord)];
+
+        for (int i = 0; i < volume; i++) {
+            int word = i / oldPerWord;
+            int value = (int) ((oldData[word] >>> ((i - word * oldPerWord) * oldBits)) & oldMask);
+            if (value != AIR) set(i, value);
+        }
+    }
+
+    // --- READ ACCESS (relative coordinates, 0 = selection min corner) ---
+
+    public int get(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) return AIR;
+        return getPacked(index(x, y, z));
+    }
+
+    public int getOriginX() { return originX; }
+    public int getOriginY() { return originY; }
+    public int getOriginZ() { return originZ; }
+    public int getSizeX() { return sizeX; }
+    public int getSizeY() { return sizeY; }
+    public int getSizeZ() { return sizeZ; }
+    public long getVolume() { return (long) sizeX * sizeY * sizeZ; }
+
+    public int getPaletteSize() { return states.size(); }
+    public BlockState getState(int paletteIndex) { return states.get(paletteIndex); }
+    public VoxelShape getShape(int paletteIndex) { return shapes.get(paletteIndex); }
+    public int getTint(int paletteIndex) { return tints[paletteIndex]; }
+    public int getMapColor(int paletteIndex) { return mapColors[paletteIndex]; }
+}
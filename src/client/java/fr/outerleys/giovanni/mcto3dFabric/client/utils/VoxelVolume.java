@@ -0,0 +1,278 @@
+/*
+ * McTo3D
+ * Copyright (c) 2026 Giovanni Outerleys
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ */
+
+package fr.outerleys.giovanni.mcto3dFabric.client.utils;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of an imported model, in model coordinates (the hologram / placement origin is 0, 0, 0).
+ * The bounding box is cut into BRICK x BRICK x BRICK bricks: empty bricks cost nothing (imported models are
+ * mostly hollow shells), the others hold palette indices packed into a long[] like VoxelSnapshot.
+ * Built on one thread, then only read.
+ */
+public class VoxelVolume {
+
+    public interface VoxelConsumer {
+        void accept(int x, int y, int z, BlockState state);
+    }
+
+    // Palette index 0 is always air (empty cell)
+    public static final int AIR = 0;
+
+    private static final int BRICK_BITS = 4;
+    private static final int BRICK = 1 << BRICK_BITS; // 16 blocks
+    private static final int BRICK_VOLUME = BRICK * BRICK * BRICK;
+
+    private final int minX, minY, minZ; // Model position of the bounding box min corner
+    private final int sizeX, sizeY, sizeZ;
+    private final int bricksX, bricksY, bricksZ;
+    private final long[][] bricks; // null = empty brick
+    private int count = 0;
+
+    // --- PALETTE ---
+    private final List<BlockState> states = new ArrayList<>();
+    private final Map<BlockState, Integer> lookup = new HashMap<>();
+
+    // --- PACKED INDICES (x -> y -> z order within a brick) ---
+    private int bits = 4;
+    private int valuesPerWord = 64 / bits;
+    private long mask = (1L << bits) - 1;
+
+    public VoxelVolume(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.bricksX = (sizeX + BRICK - 1) >> BRICK_BITS;
+        this.bricksY = (sizeY + BRICK - 1) >> BRICK_BITS;
+        this.bricksZ = (sizeZ + BRICK - 1) >> BRICK_BITS;
+
+        long brickCount = (long) bricksX * bricksY * bricksZ;
+        if (brickCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Model too large: " + sizeX + "x" + sizeY + "x" + sizeZ + " blocks");
+        }
+        this.bricks = new long[(int) brickCount][];
+
+        // Reserve index 0 for air
+        states.add(Blocks.AIR.getDefaultState());
+    }
+
+    // Empty volume (nothing voxelized)
+    public static VoxelVolume empty() {
+        return new VoxelVolume(0, 0, 0, 0, 0, 0);
+    }
+
+    // --- WRITE ACCESS (model coordinates) ---
+
+    // Stores state at (x, y, z), null or air empties the cell
+    public void set(int x, int y, int z, BlockState state) {
+        int rx = x - minX, ry = y - minY, rz = z - minZ;
+        if (rx < 0 || ry < 0 || rz < 0 || rx >= sizeX || ry >= sizeY || rz >= sizeZ) {
+            throw new IllegalArgumentException("Block outside the volume: " + x + ", " + y + ", " + z);
+        }
+        int value = state == null || state.isAir() ? AIR : paletteIndex(state);
+
+        int brick = brickIndex(rx >> BRICK_BITS, ry >> BRICK_BITS, rz >> BRICK_BITS);
+        long[] data = bricks[brick];
+        if (data == null) {
+            if (value == AIR) return;
+            data = bricks[brick] = new long[BRICK_VOLUME / valuesPerWord];
+        }
+
+        int cell = cellIndex(rx, ry, rz);
+        int old = getPacked(data, cell);
+        if (old == AIR && value != AIR) count++;
+        if (old != AIR && value == AIR) count--;
+        setPacked(data, cell, value);
+    }
+
+    private int paletteIndex(BlockState state) {
+        Integer index = lookup.get(state);
+        if (index != null) return index;
+
+        index = states.size();
+        if (index > (1 << 16) - 1) throw new IllegalStateException("Too many block states in one model");
+        if (index > mask) grow();
+        states.add(state);
+        lookup.put(state, index);
+        return index;
+    }
+
+    // --- READ ACCESS (model coordinates) ---
+
+    // Palette index at (x, y, z), AIR outside the volume
+    public int getIndex(int x, int y, int z) {
+        int rx = x - minX, ry = y - minY, rz = z - minZ;
+        if (rx < 0 || ry < 0 || rz < 0 || rx >= sizeX || ry >= sizeY || rz >= sizeZ) return AIR;
+        long[] data = bricks[brickIndex(rx >> BRICK_BITS, ry >> BRICK_BITS, rz >> BRICK_BITS)];
+        return data == null ? AIR : getPacked(data, cellIndex(rx, ry, rz));
+    }
+
+    // Block at (x, y, z), null if empty
+    public BlockState get(int x, int y, int z) {
+        int index = getIndex(x, y, z);
+        return index == AIR ? null : states.get(index);
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return getIndex(x, y, z) != AIR;
+    }
+
+    // Has at least one empty neighbour (visible face); interior blocks are hidden by the shell around them
+    public boolean isEdge(int x, int y, int z) {
+        return !contains(x, y + 1, z) || !contains(x, y - 1, z)
+                || !contains(x, y, z - 1) || !contains(x, y, z + 1)
+                || !contains(x + 1, y, z) || !contains(x - 1, y, z);
+    }
+
+    /**
+     * Every block, brick by brick (no particular order). Empty bricks and empty runs of cells are skipped
+     * without looking at their cells.
+     */
+    public void forEach(VoxelConsumer consumer) {
+        for (int bx = 0; bx < bricksX; bx++) {
+            for (int by = 0; by < bricksY; by++) {
+                for (int bz = 0; bz < bricksZ; bz++) {
+                    long[] data = bricks[brickIndex(bx, by, bz)];
+                    if (data == null) continue;
+                    int baseX = minX + (bx << BRICK_BITS), baseY = minY + (by << BRICK_BITS), baseZ = minZ + (bz << BRICK_BITS);
+
+                    for (int word = 0; word < data.length; word++) {
+                        long bitsLeft = data[word];
+                        int cell = word * valuesPerWord;
+                        while (bitsLeft != 0) {
+                            int value = (int) (bitsLeft & mask);
+                            if (value != AIR) {
+                                consumer.accept(baseX + (cell >> (2 * BRICK_BITS)), baseY + ((cell >> BRICK_BITS) & (BRICK - 1)),
+                                        baseZ + (cell & (BRICK - 1)), states.get(value));
+                            }
+                            bitsLeft >>>= bits;
+                            cell++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks the blocks layer by layer (Y, then X, then Z), for the printer: a build goes bottom up.
+     * Empty bricks are skipped a whole row at a time.
+     */
+    public class Cursor {
+        private int rx = 0, ry = 0, rz = -1;
+        private BlockState state;
+
+        // Moves to the next block, false at the end
+        public boolean next() {
+            rz++;
+            while (ry < sizeY) {
+                while (rx < sizeX) {
+                    while (rz < sizeZ) {
+                        long[] data = bricks[brickIndex(rx >> BRICK_BITS, ry >> BRICK_BITS, rz >> BRICK_BITS)];
+                        if (data == null) {
+                            rz = (rz | (BRICK - 1)) + 1; // Next brick
+                            continue;
+                        }
+                        int value = getPacked(data, cellIndex(rx, ry, rz));
+                        if (value != AIR) {
+                            state = states.get(value);
+                            return true;
+                        }
+                        rz++;
+                    }
+                    rz = 0;
+                    rx++;
+                }
+                rx = 0;
+                ry++;
+            }
+            return false;
+        }
+
+        public int x() { return minX + rx; }
+        public int y() { return minY + ry; }
+        public int z() { return minZ + rz; }
+        public BlockState state() { return state; }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Number of blocks
+    public int size() { return count; }
+    public boolean isEmpty() { return count == 0; }
+
+    public int getMinX() { return minX; }
+    public int getMinY() { return minY; }
+    public int getMinZ() { return minZ; }
+    public int getSizeX() { return sizeX; }
+    public int getSizeY() { return sizeY; }
+    public int getSizeZ() { return sizeZ; }
+
+    public int getPaletteSize() { return states.size(); }
+    public BlockState getState(int paletteIndex) { return states.get(paletteIndex); }
+
+    // --- PACKED BRICKS ---
+
+    private int brickIndex(int bx, int by, int bz) {
+        return (bx * bricksY + by) * bricksZ + bz;
+    }
+
+    // Position within the brick of a cell (relative coordinates)
+    private static int cellIndex(int rx, int ry, int rz) {
+        return ((rx & (BRICK - 1)) << (2 * BRICK_BITS)) | ((ry & (BRICK - 1)) << BRICK_BITS) | (rz & (BRICK - 1));
+    }
+
+    private void setPacked(long[] data, int index, int value) {
+        int word = index / valuesPerWord;
+        int shift = (index - word * valuesPerWord) * bits;
+        data[word] = (data[word] & ~(mask << shift)) | ((long) value << shift);
+    }
+
+    private int getPacked(long[] data, int index) {
+        int word = index / valuesPerWord;
+        int shift = (index - word * valuesPerWord) * bits;
+        return (int) ((data[word] >>> shift) & mask);
+    }
+
+    // Doubles the bits per entry once the palette outgrows the current width (4 -> 8 -> 16)
+    private void grow() {
+        int oldBits = bits;
+        int oldPerWord = valuesPerWord;
+        long oldMask = mask;
+
+        bits = oldBits * 2;
+        valuesPerWord = 64 / bits;
+        mask = (1L << bits) - 1;
+
+        for (int b = 0; b < bricks.length; b++) {
+            long[] oldData = bricks[b];
+            if (oldData == null) continue;
+            long[] data = new long[BRICK_VOLUME / valuesPerWord];
+            for (int i = 0; i < BRICK_VOLUME; i++) {
+                int word = i / oldPerWord;
+                int value = (int) ((oldData[word] >>> ((i - word * oldPerWord) * oldBits)) & oldMask);
+                if (value != AIR) setPacked(data, i, value);
+            }
+            bricks[b] = data;
+        }
+    }
+}
@@ -12,8 +12,6 @@ package fr.outerleys.giovanni.mcto3dFabric.client.utils;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Vec3d;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -21,14 +19,105 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.util.*;
-
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * OBJ model -> blocks, in two phases:
+ * 1. parse: the file is read into flat vertex / UV / triangle arrays
+ * 2. rasterize: triangles are binned by TILE x TILE x TILE tile, and the tiles are rasterized in parallel on
+ *    ExportPool, each into its own dense grid. A tile only writes its own cells, so the grids merge without
+ *    conflicts, and triangles are applied in file order within a tile (same result as one thread).
+ */
 public class Voxelizer {
 
-    public static Map<BlockPos, BlockState> loadAndVoxelize(File objFile, float scale) {
-        Map<BlockPos, BlockState> voxels = new HashMap<>();
-        List<Vec3d> vertices = new ArrayList<>();
-        List<float[]> uvs = new ArrayList<>(); // UV storage (u, v)
+    private static final int TILE_BITS = 5;
+    private static final int TILE = 1 << TILE_BITS; // 32 voxels
+
+    // Parsed model, 3 floats per vertex, 2 per UV, 6 ints per triangle (3 vertices, 3 UVs or -1 if none)
+    private static class Mesh {
+        float[] vertices = new float[3 * 1024];
+        float[] uvs = new float[2 * 1024];
+        int[] triangles = new int[6 * 1024];
+        int vertexCount, uvCount, triangleCount;
+
+        void addVertex(float x, float y, float z) {
+            if (vertexCount * 3 + 3 > vertices.length) vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            vertices[vertexCount * 3] = x;
+            vertices[vertexCount * 3 + 1] = y;
+            vertices[vertexCount * 3 + 2] = z;
+            vertexCount++;
+        }
+
+        void addUv(float u, float v) {
+            if (uvCount * 2 + 2 > uvs.length) uvs = Arrays.copyOf(uvs, uvs.length * 2);
+            uvs[uvCount * 2] = u;
+            uvs[uvCount * 2 + 1] = v;
+            uvCount++;
+        }
+
+        void addTriangle(int[] v, int[] vt) {
+            if (triangleCount * 6 + 6 > triangles.length) triangles = Arrays.copyOf(triangles, triangles.length * 2);
+            int base = triangleCount * 6;
+            for (int i = 0; i < 3; i++) {
+                triangles[base + i] = v[i];
+                triangles[base + 3 + i] = vt[i];
+            }
+            triangleCount++;
+        }
+    }
+
+    // Triangle indices of one tile, in file order
+    private static class TriangleList {
+        int[] items = new int[8];
+        int size;
+
+        void add(int triangle) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = triangle;
+        }
+    }
+
+    // Growable FIFO of cell indices (circular buffer) for the interior fill
+    private static class IntQueue {
+        int[] items = new int[1 << 12];
+        int head, size;
+
+        void add(int value) {
+            if (size == items.length) {
+                // Unrolled into a twice larger buffer, oldest first
+                int[] grown = new int[size * 2];
+                System.arraycopy(items, head, grown, 0, size - head);
+                System.arraycopy(items, 0, grown, size - head, head);
+                items = grown;
+                head = 0;
+            }
+            items[(head + size++) & (items.length - 1)] = value;
+        }
+
+        int poll() {
+            int value = items[head];
+            head = (head + 1) & (items.length - 1);
+            size--;
+            return value;
+        }
+    }
+
+    // Voxels found in one tile: local cell index (x, y, z in TILE_BITS bits each) and block
+    private record TileVoxels(int tileX, int tileY, int tileZ, int count, int[] cells, BlockState[] blocks) {}
+
+    public static VoxelVolume loadAndVoxelize(File objFile, float scale) {
+        return loadAndVoxelize(objFile, scale, p -> {});
+    }
+
+    public static VoxelVolume loadAndVoxelize(File objFile, float scale, Consumer<Float> progressCallback) {
+        return loadAndVoxelize(objFile, scale, false, progressCallback);
+    }
 
+    // fill: the inside of the model is filled too (see fillInterior), instead of a hollow shell.
+    // progressCallback gets the share of the work done, and may throw CancellationException to stop
+    public static VoxelVolume loadAndVoxelize(File objFile, float scale, boolean fill, Consumer<Float> progressCallback) {
         // Texture Management
         BufferedImage textureImg = null;
         try {
@@ -40,151 +129,354 @@ public class Voxelizer {
             }
         } catch (Exception e) { e.printStackTrace(); }
 
+        // Parsing is I/O bound and usually the shorter phase
+        Mesh mesh = parse(objFile, p -> progressCallback.accept(p * 0.3f));
+        float rasterEnd = fill ? 0.8f : 1.0f;
+        VoxelVolume voxels = rasterize(mesh, scale, textureImg, p -> progressCallback.accept(0.3f + p * (rasterEnd - 0.3f)));
+        if (fill) fillInterior(voxels, p -> progressCallback.accept(rasterEnd + p * (1.0f - rasterEnd)));
+
+        progressCallback.accept(1.0f);
+        return voxels;
+    }
+
+    // --- PHASE 1: PARSE ---
+
+    // Reads what it can: a broken line is skipped, a read error keeps what was parsed so far
+    private static Mesh parse(File objFile, Consumer<Float> progressCallback) {
+        Mesh mesh = new Mesh();
+        long fileLength = Math.max(1, objFile.length());
+        long readLength = 0;
+        int lineCount = 0;
+        int[] vIdx = new int[3];
+        int[] vtIdx = new int[3];
+
         try (BufferedReader reader = new BufferedReader(new FileReader(objFile))) {
             String line;
             while ((line = reader.readLine()) != null) {
+                readLength += line.length() + 1;
+                if (++lineCount % 4096 == 0) progressCallback.accept(Math.min(1.0f, (float) readLength / fileLength));
+
                 line = line.trim();
                 if (line.isEmpty() || line.startsWith("#")) continue;
                 String[] parts = line.split("\\s+");
 
-                if (parts[0].equals("v")) {
-                    vertices.add(new Vec3d(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3])));
-                }
-                else if (parts[0].equals("vt")) {
-                    // Read Texture Coordinates
-                    uvs.add(new float[]{Float.parseFloat(parts[1]), Float.parseFloat(parts[2])});
-                }
-                else if (parts[0].equals("f")) {
-                    if (parts.length >= 4) {
-                        int[] vIdx = new int[3];
-                        int[] vtIdx = new int[3];
+                try {
+                    if (parts[0].equals("v")) {
+                        mesh.addVertex(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]));
+                    }
+                    else if (parts[0].equals("vt")) {
+                        // Read Texture Coordinates
+                        mesh.addUv(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]));
+                    }
+                    else if (parts[0].equals("f") && parts.length >= 4) {
+                        // First triangle of the face; vertices without UV use the first one
                         boolean hasUV = false;
+                        for (int i = 0; i < 3; i++) {
+                            String[] faceParts = parts[i + 1].split("/");
+                            vIdx[i] = Integer.parseInt(faceParts[0]) - 1;
+                            vtIdx[i] = 0;
+
+                            if (faceParts.length > 1 && !faceParts[1].isEmpty()) {
+                                vtIdx[i] = Integer.parseInt(faceParts[1]) - 1;
+                                hasUV = true;
+                            }
+                        }
+                        if (!hasUV) Arrays.fill(vtIdx, -1);
+                        mesh.addTriangle(vIdx, vtIdx);
+                    }
+                } catch (Exception e) {}
+            }
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) { e.printStackTrace(); }
 
-                        try {
-                            for (int i = 0; i < 3; i++) {
-                                String[] faceParts = parts[i + 1].split("/");
-                                vIdx[i] = Integer.parseInt(faceParts[0]) - 1;
+        progressCallback.accept(1.0f);
+        return mesh;
+    }
 
-                                if (faceParts.length > 1 && !faceParts[1].isEmpty()) {
-                                    vtIdx[i] = Integer.parseInt(faceParts[1]) - 1;
-                                    hasUV = true;
-                                }
-                            }
+    // --- PHASE 2: RASTERIZE ---
+
+    private static VoxelVolume rasterize(Mesh mesh, float scale, BufferedImage img, Consumer<Float> progressCallback) {
+        // Scaled positions (voxel units)
+        double[] positions = new double[mesh.vertexCount * 3];
+        for (int i = 0; i < positions.length; i++) positions[i] = (double) mesh.vertices[i] * scale;
+
+        // 1. Bin every triangle into the tiles its cell bounds overlap
+        LongIntHashMap tileIds = new LongIntHashMap(1024);
+        List<long[]> tileCoords = new ArrayList<>();
+        List<TriangleList> tileTriangles = new ArrayList<>();
+        int[] bounds = new int[6];
+        int[] model = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int t = 0; t < mesh.triangleCount; t++) {
+            if (!cellBounds(mesh, positions, t, bounds)) continue;
+            for (int axis = 0; axis < 3; axis++) {
+                model[axis] = Math.min(model[axis], bounds[axis]);
+                model[3 + axis] = Math.max(model[3 + axis], bounds[3 + axis]);
+            }
 
-                            // Rasterization
-                            if (hasUV && !uvs.isEmpty() && textureImg != null) {
-                                rasterizeTriangleWithUV(
-                                        vertices.get(vIdx[0]), vertices.get(vIdx[1]), vertices.get(vIdx[2]),
-                                        uvs.get(vtIdx[0]), uvs.get(vtIdx[1]), uvs.get(vtIdx[2]),
-                                        scale, voxels, textureImg
-                                );
-                            } else {
-                                // Fallback without texture (White)
-                                rasterizeTriangleSimple(
-                                        vertices.get(vIdx[0]), vertices.get(vIdx[1]), vertices.get(vIdx[2]),
-                                        scale, voxels
-                                );
-                            }
-                        } catch (Exception e) {}
+            for (int tx = bounds[0] >> TILE_BITS; tx <= bounds[3] >> TILE_BITS; tx++) {
+                for (int ty = bounds[1] >> TILE_BITS; ty <= bounds[4] >> TILE_BITS; ty++) {
+                    for (int tz = bounds[2] >> TILE_BITS; tz <= bounds[5] >> TILE_BITS; tz++) {
+                        long key = tileKey(tx, ty, tz);
+                        int id = tileIds.get(key);
+                        if (id == LongIntHashMap.MISSING) {
+                            id = tileTriangles.size();
+                            tileIds.put(key, id);
+                            tileCoords.add(new long[]{tx, ty, tz});
+                            tileTriangles.add(new TriangleList());
+                        }
+                        tileTriangles.get(id).add(t);
                     }
                 }
             }
-        } catch (Exception e) { e.printStackTrace(); }
+        }
 
+        // 2. Tiles rasterized in parallel a batch at a time (progress and cancellation between batches),
+        //    each batch merged into the volume right away
+        int tileCount = tileTriangles.size();
+        if (tileCount == 0) return VoxelVolume.empty();
+        VoxelVolume voxels = new VoxelVolume(model[0], model[1], model[2],
+                model[3] - model[0] + 1, model[4] - model[1] + 1, model[5] - model[2] + 1);
+        int batch = ExportPool.get().getParallelism() * 4;
+        for (int first = 0; first < tileCount; first += batch) {
+            progressCallback.accept((float) first / Math.max(1, tileCount));
+            int from = first;
+            int count = Math.min(batch, tileCount - first);
+            TileVoxels[] results = new TileVoxels[count];
+            ExportPool.get().submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+                long[] coords = tileCoords.get(from + i);
+                results[i] = rasterizeTile(mesh, positions, img, (int) coords[0], (int) coords[1], (int) coords[2], tileTriangles.get(from + i));
+            })).join();
+
+            for (TileVoxels tile : results) {
+                int baseX = tile.tileX() << TILE_BITS;
+                int baseY = tile.tileY() << TILE_BITS;
+                int baseZ = tile.tileZ() << TILE_BITS;
+                for (int i = 0; i < tile.count(); i++) {
+                    int cell = tile.cells()[i];
+                    voxels.set(baseX + (cell >> (2 * TILE_BITS)), baseY + ((cell >> TILE_BITS) & (TILE - 1)), baseZ + (cell & (TILE - 1)),
+                            tile.blocks()[i]);
+                }
+            }
+        }
+
+        progressCallback.accept(1.0f);
         return voxels;
     }
 
-    private static void rasterizeTriangleSimple(Vec3d p1, Vec3d p2, Vec3d p3, float scale, Map<BlockPos, BlockState> voxels) {
-        // Simple rasterization logic calling internal method with null texture data
-        rasterizeInternal(p1, p2, p3, scale, voxels, null, null, null, null);
+    // Inclusive cell bounds of the triangle (minX, minY, minZ, maxX, maxY, maxZ), false if its indices are invalid.
+    // Cells are half-open ([x, x + 1)), so a coordinate belongs to the cell floor(coordinate)
+    private static boolean cellBounds(Mesh mesh, double[] positions, int t, int[] bounds) {
+        int base = t * 6;
+        for (int i = 0; i < 3; i++) {
+            int v = mesh.triangles[base + i];
+            if (v < 0 || v >= mesh.vertexCount) return false;
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            double p1 = positions[mesh.triangles[base] * 3 + axis];
+            double p2 = positions[mesh.triangles[base + 1] * 3 + axis];
+            double p3 = positions[mesh.triangles[base + 2] * 3 + axis];
+            bounds[axis] = (int) Math.floor(Math.min(p1, Math.min(p2, p3)));
+            bounds[3 + axis] = (int) Math.floor(Math.max(p1, Math.max(p2, p3)));
+        }
+        return true;
     }
 
-    private static void rasterizeTriangleWithUV(Vec3d p1, Vec3d p2, Vec3d p3, float[] uv1, float[] uv2, float[] uv3, float scale, Map<BlockPos, BlockState> voxels, BufferedImage img) {
-        rasterizeInternal(p1, p2, p3, scale, voxels, uv1, uv2, uv3, img);
+    private static long tileKey(int tx, int ty, int tz) {
+        return ((long) (tx & 0x1FFFFF) << 42) | ((long) (ty & 0x1FFFFF) << 21) | (tz & 0x1FFFFF);
     }
 
-    private static void rasterizeInternal(Vec3d p1, Vec3d p2, Vec3d p3, float scale, Map<BlockPos, BlockState> voxels, float[] uv1, float[] uv2, float[] uv3, BufferedImage img) {
-        Vec3d v1 = p1.multiply(scale);
-        Vec3d v2 = p2.multiply(scale);
-        Vec3d v3 = p3.multiply(scale);
-
-        int minX = (int) Math.floor(Math.min(v1.x, Math.min(v2.x, v3.x)));
-        int maxX = (int) Math.ceil(Math.max(v1.x, Math.max(v2.x, v3.x)));
-        int minY = (int) Math.floor(Math.min(v1.y, Math.min(v2.y, v3.y)));
-        int maxY = (int) Math.ceil(Math.max(v1.y, Math.max(v2.y, v3.y)));
-        int minZ = (int) Math.floor(Math.min(v1.z, Math.min(v2.z, v3.z)));
-        int maxZ = (int) Math.ceil(Math.max(v1.z, Math.max(v2.z, v3.z)));
+    // Reused by each worker: one cell per voxel of a tile, cleared after every tile
+    private static final ThreadLocal<BlockState[]> TILE_GRID = ThreadLocal.withInitial(() -> new BlockState[TILE * TILE * TILE]);
+
+    private static TileVoxels rasterizeTile(Mesh mesh, double[] positions, BufferedImage img, int tileX, int tileY, int tileZ, TriangleList triangles) {
+        BlockState[] grid = TILE_GRID.get();
+        TriangleBox box = new TriangleBox();
+        int[] bounds = new int[6];
+        int[] tile = {tileX << TILE_BITS, tileY << TILE_BITS, tileZ << TILE_BITS};
+
+        for (int i = 0; i < triangles.size; i++) {
+            int t = triangles.items[i];
+            cellBounds(mesh, positions, t, bounds);
+            // Only the cells of this tile
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.max(bounds[axis], tile[axis]);
+                bounds[3 + axis] = Math.min(bounds[3 + axis], tile[axis] + TILE - 1);
+            }
+            rasterizeTriangle(mesh, positions, t, img, bounds, tile, grid, box);
+        }
 
-        BlockPos.Mutable pos = new BlockPos.Mutable();
-        Vec3d p;
+        // Harvest the grid (and leave it empty for the next tile)
+        int count = 0;
+        for (BlockState state : grid) if (state != null) count++;
+        int[] cells = new int[count];
+        BlockState[] blocks = new BlockState[count];
+        int n = 0;
+        for (int cell = 0; cell < grid.length; cell++) {
+            if (grid[cell] == null) continue;
+            cells[n] = cell;
+            blocks[n++] = grid[cell];
+            grid[cell] = null;
+        }
+        return new TileVoxels(tileX, tileY, tileZ, count, cells, blocks);
+    }
 
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    p = new Vec3d(x + 0.5, y + 0.5, z + 0.5);
+    // Per-triangle setup of the triangle/box overlap test, reused by a worker for all its triangles
+    private static final class TriangleBox {
+        final double[] v = new double[9]; // 3 vertices
+        final double[] edges = new double[9]; // v1 - v0, v2 - v1, v0 - v2
+        final double[] normal = new double[3];
+        double planeD; // normal . p = planeD on the plane
+        int dominant; // axis along which the normal is largest
+
+        // Separating axes edge i x unit axis j (index i * 3 + j): direction, vertex projection range, box radius
+        final double[] axes = new double[27];
+        final double[] axisMin = new double[9], axisMax = new double[9], axisRadius = new double[9];
+
+        // Barycentric interpolation (edges v1 - v0 and v2 - v0)
+        double d00, d01, d11, invDenom;
+        final double[] weights = new double[3];
+
+        // False for a degenerate (zero area) triangle, its neighbours cover its cells
+        boolean setup(double[] positions, int i1, int i2, int i3) {
+            System.arraycopy(positions, i1 * 3, v, 0, 3);
+            System.arraycopy(positions, i2 * 3, v, 3, 3);
+            System.arraycopy(positions, i3 * 3, v, 6, 3);
+            for (int e = 0; e < 3; e++) {
+                int from = e * 3, to = ((e + 1) % 3) * 3;
+                for (int axis = 0; axis < 3; axis++) edges[e * 3 + axis] = v[to + axis] - v[from + axis];
+            }
 
-                    // Compute barycentric coordinates (u, v, w) for interpolation
-                    double[] bary = computeBarycentric(p, v1, v2, v3);
+            // Normal = (v1 - v0) x (v2 - v0) = edge0 x -edge2
+            normal[0] = edges[2] * edges[7] - edges[1] * edges[8];
+            normal[1] = edges[0] * edges[8] - edges[2] * edges[6];
+            normal[2] = edges[1] * edges[6] - edges[0] * edges[7];
+            double ax = Math.abs(normal[0]), ay = Math.abs(normal[1]), az = Math.abs(normal[2]);
+            if (ax + ay + az < 1e-12) return false;
+            dominant = ax >= ay && ax >= az ? 0 : (ay >= az ? 1 : 2);
+            planeD = normal[0] * v[0] + normal[1] * v[1] + normal[2] * v[2];
+
+            for (int e = 0; e < 3; e++) {
+                double ex = edges[e * 3], ey = edges[e * 3 + 1], ez = edges[e * 3 + 2];
+                for (int j = 0; j < 3; j++) {
+                    int k = e * 3 + j;
+                    // edge x unit axis j
+                    double lx = j == 0 ? 0 : (j == 1 ? -ez : ey);
+                    double ly = j == 0 ? ez : (j == 1 ? 0 : -ex);
+                    double lz = j == 0 ? -ey : (j == 1 ? ex : 0);
+                    axes[k * 3] = lx;
+                    axes[k * 3 + 1] = ly;
+                    axes[k * 3 + 2] = lz;
+                    double p0 = lx * v[0] + ly * v[1] + lz * v[2];
+                    double p1 = lx * v[3] + ly * v[4] + lz * v[5];
+                    double p2 = lx * v[6] + ly * v[7] + lz * v[8];
+                    axisMin[k] = Math.min(p0, Math.min(p1, p2));
+                    axisMax[k] = Math.max(p0, Math.max(p1, p2));
+                    axisRadius[k] = 0.5 * (Math.abs(lx) + Math.abs(ly) + Math.abs(lz));
+                }
+            }
 
-                    // If inside triangle (weights sum ~ 1 and positive weights)
-                    if (isInsideTriangle(bary)) {
-                        pos.set(x, y, z);
+            double e0x = edges[0], e0y = edges[1], e0z = edges[2];
+            double e1x = -edges[6], e1y = -edges[7], e1z = -edges[8];
+            d00 = e0x * e0x + e0y * e0y + e0z * e0z;
+            d01 = e0x * e1x + e0y * e1y + e0z * e1z;
+            d11 = e1x * e1x + e1y * e1y + e1z * e1z;
+            invDenom = 1.0 / (d00 * d11 - d01 * d01);
+            return true;
+        }
 
-                        if (img != null && uv1 != null) {
-                            // UV Interpolation: UV_pixel = UV1*w1 + UV2*w2 + UV3*w3
-                            double texU = uv1[0] * bary[0] + uv2[0] * bary[1] + uv3[0] * bary[2];
-                            double texV = uv1[1] * bary[0] + uv2[1] * bary[1] + uv3[1] * bary[2];
+        // Does axis k separate the triangle from the unit cell centered on (cx, cy, cz)?
+        boolean separates(int k, double cx, double cy, double cz) {
+            double center = axes[k * 3] * cx + axes[k * 3 + 1] * cy + axes[k * 3 + 2] * cz;
+            return axisMin[k] - center > axisRadius[k] || axisMax[k] - center < -axisRadius[k];
+        }
 
-                            // Get pixel color
-                            int pixelColor = getPixelColor(img, (float)texU, (float)texV);
-                            int r = (pixelColor >> 16) & 0xFF;
-                            int g = (pixelColor >> 8) & 0xFF;
-                            int b = (pixelColor) & 0xFF;
+        // Barycentric weights of the point projected on the triangle, clamped inside it
+        void interpolate(double px, double py, double pz) {
+            double qx = px - v[0], qy = py - v[1], qz = pz - v[2];
+            double d20 = qx * edges[0] + qy * edges[1] + qz * edges[2];
+            double d21 = -(qx * edges[6] + qy * edges[7] + qz * edges[8]);
+            double b1 = Math.max(0, (d11 * d20 - d01 * d21) * invDenom);
+            double b2 = Math.max(0, (d00 * d21 - d01 * d20) * invDenom);
+            double b0 = Math.max(0, 1.0 - b1 - b2);
+            double sum = b0 + b1 + b2;
+            weights[0] = b0 / sum;
+            weights[1] = b1 / sum;
+            weights[2] = b2 / sum;
+        }
+    }
 
-                            voxels.put(pos.toImmutable(), BlockColorMap.getClosestBlock(r, g, b));
-                        } else {
-                            voxels.put(pos.toImmutable(), Blocks.WHITE_CONCRETE.getDefaultState());
-                        }
+    /**
+     * Writes the blocks of the cells within bounds that the triangle overlaps into the tile grid.
+     * The triangle is walked column by column along its dominant axis: a column only holds the cells between
+     * the heights where the plane crosses it, and each is kept if no edge cross product axis separates it
+     * from the triangle (separating axis theorem; the cell and normal axes are covered by bounds and columns).
+     * Cells are half-open, so a face lying on a cell boundary fills one layer, not two.
+     */
+    private static void rasterizeTriangle(Mesh mesh, double[] positions, int t, BufferedImage img, int[] bounds, int[] tile,
+                                          BlockState[] grid, TriangleBox box) {
+        int base = t * 6;
+        if (!box.setup(positions, mesh.triangles[base], mesh.triangles[base + 1], mesh.triangles[base + 2])) return;
+
+        // Textured if the face has UVs (and they exist) and the model has a texture
+        int t1 = mesh.triangles[base + 3], t2 = mesh.triangles[base + 4], t3 = mesh.triangles[base + 5];
+        boolean textured = img != null && t1 >= 0 && t1 < mesh.uvCount && t2 >= 0 && t2 < mesh.uvCount && t3 >= 0 && t3 < mesh.uvCount;
+
+        int a = box.dominant, b = (a + 1) % 3, c = (a + 2) % 3;
+        double na = box.normal[a], nb = box.normal[b], nc = box.normal[c];
+        int[] cell = new int[3];
+        double[] center = new double[3];
+
+        for (int i = bounds[b]; i <= bounds[3 + b]; i++) {
+            for (int j = bounds[c]; j <= bounds[3 + c]; j++) {
+                cell[b] = i;
+                cell[c] = j;
+                center[b] = i + 0.5;
+                center[c] = j + 0.5;
+
+                // Axes edge x dominant axis don't depend on the height: whole column out of the triangle's outline
+                if (box.separates(a, center[0], center[1], center[2])
+                        || box.separates(3 + a, center[0], center[1], center[2])
+                        || box.separates(6 + a, center[0], center[1], center[2])) continue;
+
+                // Heights of the plane at the 4 corners of the column
+                double h00 = (box.planeD - nb * i - nc * j) / na;
+                double h10 = h00 - nb / na, h01 = h00 - nc / na, h11 = h10 - nc / na;
+                int from = Math.max(bounds[a], (int) Math.floor(Math.min(Math.min(h00, h10), Math.min(h01, h11))));
+                int to = Math.min(bounds[3 + a], (int) Math.floor(Math.max(Math.max(h00, h10), Math.max(h01, h11))));
+
+                for (int k = from; k <= to; k++) {
+                    cell[a] = k;
+                    center[a] = k + 0.5;
+                    boolean overlaps = true;
+                    for (int axis = 0; axis < 9 && overlaps; axis++) {
+                        if (axis % 3 != a && box.separates(axis, center[0], center[1], center[2])) overlaps = false;
+                    }
+                    if (!overlaps) continue;
+
+                    int index = ((cell[0] - tile[0]) << (2 * TILE_BITS)) | ((cell[1] - tile[1]) << TILE_BITS) | (cell[2] - tile[2]);
+                    if (textured) {
+                        // UV Interpolation: UV_pixel = UV1*w1 + UV2*w2 + UV3*w3
+                        box.interpolate(center[0], center[1], center[2]);
+                        double[] w = box.weights;
+                        double texU = mesh.uvs[t1 * 2] * w[0] + mesh.uvs[t2 * 2] * w[1] + mesh.uvs[t3 * 2] * w[2];
+                        double texV = mesh.uvs[t1 * 2 + 1] * w[0] + mesh.uvs[t2 * 2 + 1] * w[1] + mesh.uvs[t3 * 2 + 1] * w[2];
+
+                        // Get pixel color
+                        int pixelColor = getPixelColor(img, (float)texU, (float)texV);
+                        int r = (pixelColor >> 16) & 0xFF;
+                        int g = (pixelColor >> 8) & 0xFF;
+                        int bl = (pixelColor) & 0xFF;
+
+                        grid[index] = BlockColorMap.getClosestBlock(r, g, bl);
+                    } else {
+                        grid[index] = Blocks.WHITE_CONCRETE.getDefaultState();
                     }
                 }
             }
         }
     }
 
-    // Maths: Check if point projects inside the triangle
-    private static boolean isInsideTriangle(double[] bary) {
-        // Tolerance slightly negative to "fill" voxels better (avoid gaps)
-        double tolerance = -0.1;
-        return bary[0] >= tolerance && bary[1] >= tolerance && bary[2] >= tolerance;
-    }
-
-    private static double[] computeBarycentric(Vec3d p, Vec3d a, Vec3d b, Vec3d c) {
-        Vec3d v0 = b.subtract(a);
-        Vec3d v1 = c.subtract(a);
-        Vec3d v2 = p.subtract(a);
-
-        double d00 = v0.dotProduct(v0);
-        double d01 = v0.dotProduct(v1);
-        double d11 = v1.dotProduct(v1);
-        double d20 = v2.dotProduct(v0);
-        double d21 = v2.dotProduct(v1);
-
-        double denom = d00 * d11 - d01 * d01;
-        if (Math.abs(denom) < 1e-5) return new double[]{-1, -1, -1}; // Degenerate triangle
-
-        double v = (d11 * d20 - d01 * d21) / denom;
-        double w = (d00 * d21 - d01 * d20) / denom;
-        double u = 1.0 - v - w;
-
-        // Also check distance to plane
-        Vec3d normal = v0.crossProduct(v1).normalize();
-        double dist = Math.abs(v2.dotProduct(normal));
-
-        if (dist > 0.6) return new double[]{-1, -1, -1}; // Too far from triangle plane
-
-        return new double[]{u, v, w};
-    }
-
     private static int getPixelColor(BufferedImage img, float u, float v) {
         // Texture Wrapping (Repeat)
         u = u - (float)Math.floor(u);
@@ -201,4 +493,99 @@ public class Voxelizer {
 
         return img.getRGB(x, y);
     }
-}
\ No newline at end of file
+
+    // --- PHASE 3: FILL ---
+
+    /**
+     * Fills the inside of the model. The empty cells reachable from outside the bounding box (6-connected,
+     * breadth first over a bit set and an int queue: no recursion, nothing allocated per cell) are outside,
+     * every other empty cell is inside. Linear in the volume of the box. The conservative shell from
+     * rasterize() doesn't let a 6-connected flood through, so only holes in the mesh itself keep parts hollow.
+     * The fill block is the BlockColorMap match of the shell's mean color.
+     */
+    private static void fillInterior(VoxelVolume voxels, Consumer<Float> progressCallback) {
+        int sx = voxels.getSizeX(), sy = voxels.getSizeY(), sz = voxels.getSizeZ();
+        long volume = (long) sx * sy * sz;
+        if (voxels.isEmpty()) return;
+        if (volume > Integer.MAX_VALUE) throw new IllegalArgumentException("Model too large to fill: " + volume + " cells");
+
+        int mx = voxels.getMinX(), my = voxels.getMinY(), mz = voxels.getMinZ();
+        long[] outside = new long[(int) ((volume + 63) >>> 6)];
+        IntQueue queue = new IntQueue();
+
+        // 1. Seeds: the empty cells on the 6 faces of the box
+        for (int x = 0; x < sx; x++) {
+            for (int y = 0; y < sy; y++) {
+                markOutside(voxels, outside, queue, x, y, 0);
+                markOutside(voxels, outside, queue, x, y, sz - 1);
+            }
+            for (int z = 0; z < sz; z++) {
+                markOutside(voxels, outside, queue, x, 0, z);
+                markOutside(voxels, outside, queue, x, sy - 1, z);
+            }
+        }
+        for (int y = 0; y < sy; y++) {
+            for (int z = 0; z < sz; z++) {
+                markOutside(voxels, outside, queue, 0, y, z);
+                markOutside(voxels, outside, queue, sx - 1, y, z);
+            }
+        }
+
+        // 2. Flood of the outside air
+        long emptyCells = Math.max(1, volume - voxels.size());
+        long reached = 0;
+        while (queue.size > 0) {
+            int cell = queue.poll();
+            if ((++reached & 0xFFFF) == 0) progressCallback.accept(0.7f * Math.min(1.0f, (float) reached / emptyCells));
+
+            int z = cell % sz;
+            int y = (cell / sz) % sy;
+            int x = cell / (sz * sy);
+            if (x > 0) markOutside(voxels, outside, queue, x - 1, y, z);
+            if (x < sx - 1) markOutside(voxels, outside, queue, x + 1, y, z);
+            if (y > 0) markOutside(voxels, outside, queue, x, y - 1, z);
+            if (y < sy - 1) markOutside(voxels, outside, queue, x, y + 1, z);
+            if (z > 0) markOutside(voxels, outside, queue, x, y, z - 1);
+            if (z < sz - 1) markOutside(voxels, outside, queue, x, y, z + 1);
+        }
+
+        // 3. Fill block: closest match of the mean color of the shell
+        long[] sum = new long[3];
+        voxels.forEach((x, y, z, state) -> {
+            int color = state.getBlock().getDefaultMapColor().color;
+            sum[0] += (color >> 16) & 0xFF;
+            sum[1] += (color >> 8) & 0xFF;
+            sum[2] += color & 0xFF;
+        });
+        int shell = voxels.size();
+        BlockState fillBlock = BlockColorMap.getClosestBlock((int) (sum[0] / shell), (int) (sum[1] / shell), (int) (sum[2] / shell));
+
+        // 4. Everything empty and not outside is inside
+        int filled = 0;
+        for (int x = 0; x < sx; x++) {
+            progressCallback.accept(0.7f + 0.3f * x / sx);
+            for (int y = 0; y < sy; y++) {
+                int row = (x * sy + y) * sz;
+                for (int z = 0; z < sz; z++) {
+                    int cell = row + z;
+                    if ((outside[cell >>> 6] & (1L << cell)) != 0) continue;
+                    if (voxels.getIndex(mx + x, my + y, mz + z) != VoxelVolume.AIR) continue;
+                    voxels.set(mx + x, my + y, mz + z, fillBlock);
+                    filled++;
+                }
+            }
+        }
+
+        System.out.println("Interior filled with " + filled + " blocks of " + fillBlock.getBlock().getName().getString());
+        progressCallback.accept(1.0f);
+    }
+
+    // Queues the cell (box coordinates) if it's empty and not reached yet
+    private static void markOutside(VoxelVolume voxels, long[] outside, IntQueue queue, int x, int y, int z) {
+        int cell = (x * voxels.getSizeY() + y) * voxels.getSizeZ() + z;
+        if ((outside[cell >>> 6] & (1L << cell)) != 0) return;
+        if (voxels.getIndex(voxels.getMinX() + x, voxels.getMinY() + y, voxels.getMinZ() + z) != VoxelVolume.AIR) return;
+        outside[cell >>> 6] |= 1L << cell;
+        queue.add(cell);
+    }
+}